@@ -7,19 +7,15 @@
  * um canal produz ruidos (explosoes, tiros);
  * um canal reproduz amostras PCM digitalizadas (vozes, percussao);
  * as musicas sao produzidas modulando-se intensidade, timbre, decaimento das ondas
- * os cinco canais sao mixados e a amostra final enviada para o streaming de audio
- * a APU produz amostras na mesma frequencia da CPU (1.76 Mhz); 
+ * os cinco canais sao mixados e a amostra final enviada ao destino de audio (AudioSink)
+ * a APU produz amostras na mesma frequencia da CPU (1.79 Mhz); 
  * o audio dos computadores modernos tipicamente utiliza frequencia de 48 Khz;
- * entao a cada 37 amostras produzidas, uma é enviada para reprodução 
+ * entao somente as variacoes da mixagem sao enviadas ao BlepBuffer, que as converte em 48 Khz sem aliasing
  */
 
 package com.jamicom;
 
-
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.SourceDataLine;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.LineUnavailableException;
+import java.util.Arrays;
 
 class Apu { 
 
@@ -109,26 +105,39 @@ class Apu {
     private int frameCounterstepsCounter;
     private int frameCounter;               
     private int frameCounterIrqInhFlag;      
-    private int sampleCounter;             
-    private  AudioFormat audioFormat;
-	private  SourceDataLine dataLine;
-	private byte[] frameBuffer;
-	private int frameBufferWriteCursor;
-	private int frameBufferLecturaCursor;
+	private AudioSink audioSink;
+	private byte[] outputBuffer;
+	private BlepBuffer blepBuffer;
+	private int frameCycles;		// ciclos desde o ultimo audioPlayFrame (tempo dos deltas no BlepBuffer)
+	private int lastAmplitude;		// ultima mixagem enviada ao BlepBuffer
 	private int frameIrqFlag; 
 	public int dmcInterruptEnable;         
 	public int dmcIrqFlag;
 	boolean dmcSilenceFlag;
-	private float[] pulse_table;
-	private float[] tnd_table;
+	private int[] pulse_table;
+	private int[] tnd_table;
     boolean updateDmcCycles;
     int reloadDmcSampleAddr;
-    int pulseSoma, tndSoma;
-    private boolean frameSkip;
+    private boolean halted;		// emulacao pausada: envia silencio
+    private boolean muted;		// ninguem ouve: so o estado visivel a CPU e emulado (mutedUpdate)
+    /* sintese em outra thread (ApuWorker); esta APU so emula o estado visivel a CPU
+     * o campo e confinado a thread da emulacao: startWorker e stopWorker so podem ser chamados por ela, como o resto
+     * desta Apu (a SynthApu da thread "apu" tem o proprio campo, sempre null); por isso nao e volatile
+     */
+    private ApuWorker worker;
+    private boolean stopWorkerPending;	// stopWorker() no meio do quadro: a troca fica para o fim dele
+    private boolean stepEveryCycle;	// referencia: audioUpdate executa todos os ciclos em stepCycle, sem skipCycles
+    private int sampleRate = Globals.SAMPLE_RATE;	// taxa de saida configurada
+    private double rateAdjust = 1.0;	// fator aplicado a taxa de saida a partir do proximo quadro
+    private double outputRate = Globals.SAMPLE_RATE;	// taxa em uso no BlepBuffer (sampleRate * rateAdjust)
 	private Mapper mapper;
+	private Scheduler scheduler;
+	private long apuClock;		// posicao da APU no relogio mestre (pontos da PPU)
+	private int cycleParity;	// timers dos quadrados e ruido andam a cada 2 ciclos da CPU
 	
-	// numero de amostras por quadro * numero de bytes por amostra ( amostras de 16 bits)
-	final int AUDIO_BUFFER_SIZE = Globals.FRAMEBUFFER_SIZE * 2;
+	// maximo de amostras num quadro: taxa maxima com ajuste maximo, com folga (quadro de 1/50 s)
+	static final int MAX_FRAME_SAMPLES = Globals.MAX_SAMPLE_RATE / 50;
+	static final double MAX_RATE_ADJUST = 0.02;	// limite do ajuste dinamico de taxa (+-2%)
 	
     public Apu() {
     	channelOutput = new int[3];
@@ -156,113 +165,425 @@ class Apu {
         noiseRegisters = new int[2];
         dmcRegisters = new int[3];
 
-        // necessario manter volume de 4 vezes o buffer para o som ser reproduzido sem cortes
-        frameBuffer = new byte[AUDIO_BUFFER_SIZE * 4];
+        // comporta dois quadros na taxa maxima entre duas leituras
+        blepBuffer = new BlepBuffer(Globals.CPU_CLOCK_RATE, Globals.SAMPLE_RATE, MAX_FRAME_SAMPLES * 2);
         frameCountersteps = 4;
         frameCounterIrqInhFlag = 4;
         noiseShiftRegister = 1;
         noiseModeRegister = 1;
         dmcShiftRemainBits = 7;
-        pulse_table = new float[31];
-        tnd_table = new float[203];
+        pulse_table = new int[31];
+        tnd_table = new int[203];
 
         // variaveis usadas no calculo da mixagem dos canais
         for(int n = 0; n < 31; n++) {
-        	pulse_table [n] = (float) (95.52 / (8128.0 / n + 100) * 0xffff);
+        	pulse_table [n] = (int) (95.52 / (8128.0 / n + 100) * 0xffff);
         }
         
         for(int n =0; n < 203; n++) {
-        	tnd_table [n] = (float) (163.67 / (24329.0 / n + 100) * 0xffff);
+        	tnd_table [n] = (int) (163.67 / (24329.0 / n + 100) * 0xffff);
         }
-		
-        // solicita ao sistema interface de audio nas configuracoes pre-definidas
-        audioFormat = new AudioFormat(Globals.SAMPLE_RATE, 
-        		Globals.BITS_PER_SAMPLE, Globals.AUDIO_CHANNELS, true, true);
-		
-        try {
-        	// abre linha (streaming) para envio das amostras ao audio da maquina hospedeira
-			dataLine = AudioSystem.getSourceDataLine(audioFormat);
-			dataLine.open(audioFormat);
-			dataLine.start();
-		    dataLine.flush();
-			
-		}
-        
-		catch(LineUnavailableException e) {
-			System.out.println("Audio format not supported.");
-		}        
+        // numero de amostras por quadro * numero de bytes por amostra ( amostras de 16 bits)
+        outputBuffer = new byte[MAX_FRAME_SAMPLES * 2];
     }
     
-    public void setup(Mapper mapper) {
-    	this.mapper = mapper;
+    public void setup(Emulator emulator) {
+    	this.mapper = emulator.getMapper();
+    	this.scheduler = emulator.getConsole().getScheduler();
+    	this.audioSink = emulator.getAudioSink();
+    	apuClock = 0;
+    }
+
+    void setAudioSink(AudioSink audioSink) {
+    	this.audioSink = audioSink;
+    }
+
+    /* passa a sintese para uma thread propria (ApuWorker), que entrega o audio a audioSink
+     * so pode ser chamado com a APU no estado inicial, antes de qualquer ciclo, para as duas APUs partirem iguais
+     */
+    void startWorker(AudioSink audioSink) {
+    	if (worker != null)
+    		return;
+    	worker = new ApuWorker(audioSink);
+    	worker.setSampleRate(sampleRate);
+    	worker.setRateAdjust(rateAdjust);
+    	worker.setHalted(halted);
+    	worker.setMuted(muted);
+    }
+
+    /* volta a sintese para esta thread no limite de um quadro: a ApuWorker termina o que ja foi registrado
+     * e os quadros seguintes sao sintetizados aqui, como ao sair do modo mudo (timers dos canais retomados
+     * de onde pararam; registradores, contadores e DMC ja estao exatos)
+     */
+    void stopWorker() {
+    	if (worker == null)
+    		return;
+    	if (frameCycles > 0)
+    		stopWorkerPending = true;
+    	else
+    		finishWorker();
+    }
+
+    private void finishWorker() {
+    	worker.stop();
+    	worker = null;
+    	stopWorkerPending = false;
+    	updateOutputRate();
+    }
+
+    boolean hasWorker() {
+    	return worker != null;
+    }
+
+    // interrupcoes e memoria do console; a SynthApu substitui por versoes sem efeito / lidas do registro
+    void signalFrameIrq() {
+    	mapper.setInterruptSignal(Globals.INTERRUPT_FRAME_IRQ);
+    }
+
+    void clearFrameIrq() {
+    	mapper.clearInterruptSignal(Globals.INTERRUPT_FRAME_IRQ);
+    }
+
+    void signalDmcIrq() {
+    	mapper.setInterruptSignal(Globals.INTERRUPT_DMC_IRQ);
+    	mapper.setIrqDelayFlag(false);
     }
 
-    // atualiza os canais e gera 3 amostras por linha (786 amostras por quadro)
+    int readDmcSample(int addr) {
+    	int value = mapper.ioRead(addr);
+    	ApuWorker worker = this.worker;
+    	if (worker != null)
+    		worker.logDmcSample(value);
+    	return value;
+    }
+
+    // escrita nos registradores da APU ($4000 - $4013, $4015, $4017); com a sintese em outra thread tambem vai para o registro
+    void registerWrite(int addr, int value) {
+    	switch (addr) {
+    		case 0x4000: sqrRegister0Write(Globals.SQUARE1, value); break;
+    		case 0x4001: sqrRegister1Write(Globals.SQUARE1, value); break;
+    		case 0x4002: sqrRegister2Write(Globals.SQUARE1, value); break;
+    		case 0x4003: sqrRegister3Write(Globals.SQUARE1, value); break;
+    		case 0x4004: sqrRegister0Write(Globals.SQUARE2, value); break;
+    		case 0x4005: sqrRegister1Write(Globals.SQUARE2, value); break;
+    		case 0x4006: sqrRegister2Write(Globals.SQUARE2, value); break;
+    		case 0x4007: sqrRegister3Write(Globals.SQUARE2, value); break;
+    		case 0x4008: trgRegister0Write(value); break;
+    		case 0x400A: trgRegister1Write(value); break;
+    		case 0x400B: trgRegister2Write(value); break;
+    		case 0x400C: noiseRegister0Write(value); break;
+    		case 0x400E: noiseRegister1Write(value); break;
+    		case 0x400F: noiseRegister2Write(value); break;
+    		case 0x4010: dmcRegister0Write(value); break;
+    		case 0x4011: dmcRegister1Write(value); break;
+    		case 0x4012: dmcRegister2Write(value); break;
+    		case 0x4013: dmcRegister3Write(value); break;
+    		case 0x4015:
+    			toggleChannel(value);
+    			dmcIrqFlag = 0;
+    			break;
+    		case 0x4017: reg4017Write(value); break;
+    		default: return;
+    	}
+    	ApuWorker worker = this.worker;
+    	if (worker != null)
+    		worker.logWrite(frameCycles, addr, value);
+    }
+
+    // sintese em outra thread: avanca ate o ciclo informado do quadro atual
+    void advanceTo(int cycle) {
+    	if (cycle > frameCycles)
+    		audioUpdate(cycle - frameCycles);
+    }
+
+    // executa os ciclos pendentes ate o relogio mestre informado (acesso a registradores, eventos, fim de quadro)
+    void catchUp(long masterClock) {
+    	int cycles = (int) ((masterClock - apuClock) / Globals.DOTS_PER_CPU_CYCLE);
+    	if(cycles > 0) {
+    		audioUpdate(cycles);
+    		apuClock += (long) cycles * Globals.DOTS_PER_CPU_CYCLE;
+    	}
+    }
+
+    /* agenda os instantes em que a APU pode afetar a CPU: o proximo passo do frame counter
+     * e a busca da DMC que esgota a amostra (so interessa quando pode gerar IRQ)
+     */
+    void scheduleEvents() {
+    	scheduler.schedule(Scheduler.EVENT_APU_FRAME,
+    			apuClock + (long) (Globals.APU_FRAME_CYCLES + 2 - frameCounter) * Globals.DOTS_PER_CPU_CYCLE);
+
+    	boolean dmcIrqPossible = dmcIrqFlag != 0 || (dmcInterruptEnable == 0x80 && dmcLoopFlag != 0x40);
+    	if(channelSwitch[Globals.DMC] != 0 && dmcIrqPossible) {
+    		long cycles = dmcTimer >= 0 ? dmcTimer + 1 : 1;
+    		if(dmcIrqFlag == 0) {
+    			int fetches = Math.max(dmcRemainSamples, 1);
+    			int ticks = (dmcShiftRemainBits - 1) + (fetches - 1) * 8;
+    			cycles += (long) ticks * (dmcTimerValues[dmcRegisters[Globals.DMC_REGISTER_0] & 0xF] + 1);
+    		}
+    		scheduler.schedule(Scheduler.EVENT_DMC_FETCH, apuClock + cycles * Globals.DOTS_PER_CPU_CYCLE);
+    	}
+    	else
+    		scheduler.cancel(Scheduler.EVENT_DMC_FETCH);
+    }
+
+    /* atualiza os canais pelo numero de ciclos informado e envia ao BlepBuffer as variacoes da mixagem
+     * somente os ciclos em que algo pode mudar (passo do frame counter, fim do timer de um canal audivel,
+     * busca da DMC) sao executados por inteiro em stepCycle; os intervalos entre eles sao avancados
+     * aritmeticamente em skipCycles, logo canais parados ou silenciosos praticamente nao custam nada
+     * o primeiro ciclo e sempre completo para refletir nas saidas as escritas feitas nos registradores
+     */
     void audioUpdate(int cicl) {
-    	if(frameSkip == true)
+    	if (muted || worker != null) {
+    		mutedUpdate(cicl);
     		return;
-        for (int n = 0; n < Globals.CYCLES_PER_LINE; n++) {
-        	
-            if (frameCounter++ > Globals.APU_FRAME_CYCLES) {
-                frameCounter = 0;
-                executeFrameCounter();
-            }
-            
-            if (--channelTimer[Globals.TRIANGLE] <= 0)
-                updateTriangleWave();
-            
-            if (--dmcTimer < 0)
-                updateDmcWave();
-            
-            if (n % 2 == 1) {      
-            	channelTimer[Globals.SQUARE1]--;
-                channelTimer[Globals.SQUARE2]--;
-                noiseTimer--;
-            }
-            updateSquareWaves(Globals.SQUARE1);
-            updateSquareWaves(Globals.SQUARE2);
-            updateNoiseWave();
-            updateSquareOutputs(Globals.SQUARE1);
-            updateSquareOutputs(Globals.SQUARE2);
-
-            sampleCounter++;
-            pulseSoma += pulse_table [channelOutput[Globals.SQUARE1] + channelOutput[Globals.SQUARE2] ];
-            tndSoma +=tnd_table [3 * channelOutput[Globals.TRIANGLE] + 2 * noiseOutput + dmcDac];
-            
-            // preenche o buffer com uma a cada 37 amostras produzidas
-            if (sampleCounter == Globals.CYCLES_PER_SAMPLE) {
-                sampleCounter = 0;
-                int finalSample =  ((pulseSoma + tndSoma) / Globals.CYCLES_PER_SAMPLE) ^ 0x8000;
-                pulseSoma = tndSoma = 0;
-                frameBuffer[frameBufferWriteCursor++] = (byte)(finalSample >>8);
-                frameBuffer[frameBufferWriteCursor++] = (byte) (finalSample &0xff);
- 
-                if (frameBufferWriteCursor == AUDIO_BUFFER_SIZE * 4)
-                    frameBufferWriteCursor = 0;
-            
-            }
-        
-        }        	
+    	}
+    	int remaining = cicl;
+    	while (remaining > 0) {
+    		stepCycle();
+    		remaining--;
+    		int idle = stepEveryCycle ? 0 : Math.min(idleCycles(), remaining);
+    		if (idle > 0) {
+    			skipCycles(idle);
+    			remaining -= idle;
+    		}
+    	}
     }
 
-    // envia o buffer para o streaming ao final do quadro
-    void audioPlayFrame() throws InterruptedException {
-        byte[] laBuffer = new byte[AUDIO_BUFFER_SIZE];
-        for (int n = 0; n < AUDIO_BUFFER_SIZE; n++) {
-	        laBuffer[n] = Globals.IS_HALT? 0 : (byte) frameBuffer[frameBufferLecturaCursor++];
-	        if(frameBufferWriteCursor - frameBufferLecturaCursor > AUDIO_BUFFER_SIZE)
-	        	frameSkip = true;
-	        else
-	        	frameSkip = false;
-	        if (frameBufferLecturaCursor == AUDIO_BUFFER_SIZE * 4)
-	        	frameBufferLecturaCursor = 0;        
+    /* modo mudo: somente o que a CPU enxerga e emulado com exatidao - frame counter (contadores de duracao,
+     * envelopes, sweep, IRQ do quadro) e a DMC (busca na memoria, IRQ, $4015); os timers dos quadrados,
+     * do triangulo e do ruido ficam parados e nada e mixado, pois so alteram a forma de onda
+     */
+    private void mutedUpdate(int cycles) {
+    	int remaining = cycles;
+    	while (remaining > 0) {
+    		if (frameCounter++ > Globals.APU_FRAME_CYCLES) {
+    			frameCounter = 0;
+    			executeFrameCounter();
+    		}
+    		if (--dmcTimer < 0)
+    			updateDmcWave();
+    		remaining--;
+
+    		int idle = Math.min(Math.max(Globals.APU_FRAME_CYCLES + 1 - frameCounter, 0), remaining);
+    		if (channelSwitch[Globals.DMC] != 0)
+    			idle = Math.min(idle, Math.max(dmcTimer, 0));
+    		if (idle > 0) {
+    			frameCounter += idle;
+    			dmcTimer -= idle;
+    			if (dmcTimer < -1)
+    				dmcTimer = -1;
+    			remaining -= idle;
+    		}
+    	}
+    	cycleParity ^= cycles & 1;
+    	frameCycles += cycles;
+    }
+
+    // um ciclo da CPU com todos os canais (ordem original de atualizacao)
+    private void stepCycle() {
+        if (frameCounter++ > Globals.APU_FRAME_CYCLES) {
+            frameCounter = 0;
+            executeFrameCounter();
+        }
+        
+        if (--channelTimer[Globals.TRIANGLE] <= 0)
+            updateTriangleWave();
+        
+        if (--dmcTimer < 0)
+            updateDmcWave();
+        
+        if ((cycleParity ^= 1) == 0) {      
+        	channelTimer[Globals.SQUARE1]--;
+            channelTimer[Globals.SQUARE2]--;
+            noiseTimer--;
         }
+        updateSquareWaves(Globals.SQUARE1);
+        updateSquareWaves(Globals.SQUARE2);
+        updateNoiseWave();
+        updateSquareOutputs(Globals.SQUARE1);
+        updateSquareOutputs(Globals.SQUARE2);
+
+        // somente as mudancas de amplitude geram trabalho no BlepBuffer
+        int amplitude = pulse_table [channelOutput[Globals.SQUARE1] + channelOutput[Globals.SQUARE2] ] +
+        		tnd_table [3 * channelOutput[Globals.TRIANGLE] + 2 * noiseOutput + dmcDac];
+        if (amplitude != lastAmplitude) {
+        	blepBuffer.addDelta(frameCycles, amplitude - lastAmplitude);
+        	lastAmplitude = amplitude;
+        }
+        frameCycles++;
+    }
+
+    /* numero de ciclos a partir do proximo em que nenhuma saida ou flag pode mudar
+     * os timers dos quadrados e do ruido so andam nos ciclos pares: o m-esimo decremento cai no ciclo firstTick + 2 * (m - 1)
+     */
+    private int idleCycles() {
+    	int idle = Math.max(Globals.APU_FRAME_CYCLES + 1 - frameCounter, 0);
+
+    	// triangulo so muda a saida quando os contadores estao ativos (expira quando o timer chega a zero)
+    	if (trgLinearCounter > 0 && channelLengthCounter[Globals.TRIANGLE] > 0)
+    		idle = Math.min(idle, Math.max(channelTimer[Globals.TRIANGLE], 1) - 1);
+
+    	// DMC ligada: cada expiracao pode alterar o DAC, buscar memoria ou sinalizar IRQ
+    	if (channelSwitch[Globals.DMC] != 0)
+    		idle = Math.min(idle, Math.max(dmcTimer, 0));
+
+    	int firstTick = cycleParity == 1 ? 0 : 1;
+    	for (int n = Globals.SQUARE1; n <= Globals.SQUARE2; n++) {
+    		if (channelLengthCounter[n] != 0 && sqrVolume[n] != 0 && channelSwitch[n] != 0) {
+    			int timer = channelTimer[n];
+    			// fim do periodo (passo do duty) ou timer passando de 8 para 7 (saida zerada em updateSquareOutputs)
+    			idle = Math.min(idle, firstTick + 2 * (timer >= 8 ? timer - 8 : timer));
+    		}
+    	}
+    	if (noiseLengthCounter != 0 && (noiseVolume & channelSwitch[Globals.NOISE]) != 0)
+    		idle = Math.min(idle, firstTick + 2 * noiseTimer);
+    	return idle;
+    }
+
+    // avanca os contadores por ciclos sem eventos audiveis (os canais silenciosos podem expirar no intervalo)
+    private void skipCycles(int cycles) {
+    	frameCounter += cycles;
+
+    	// triangulo com contadores zerados: a expiracao apenas recarrega o timer
+    	int trgTimer = channelTimer[Globals.TRIANGLE];
+    	int trgFirst = Math.max(trgTimer, 1);
+    	if (cycles >= trgFirst) {
+    		int period = (trgRegisters[Globals.TRIANGLE_REGISTER_1] | 
+    				(trgRegisters[Globals.TRIANGLE_REGISTER_2] & 7) << 8) + 1;
+    		channelTimer[Globals.TRIANGLE] = period - (cycles - trgFirst) % period;
+    	}
+    	else
+    		channelTimer[Globals.TRIANGLE] = trgTimer - cycles;
+
+    	// DMC desligada decrementa sem efeito; so o sinal do timer importa
+    	dmcTimer -= cycles;
+    	if (dmcTimer < -1)
+    		dmcTimer = -1;
+
+    	int ticks = (cycles + cycleParity) >> 1;
+    	cycleParity ^= cycles & 1;
+    	skipSquareTicks(Globals.SQUARE1, ticks);
+    	skipSquareTicks(Globals.SQUARE2, ticks);
+    	skipNoiseTicks(ticks);
+    	frameCycles += cycles;
+    }
+
+    // aplica ticks decrementos ao timer do quadrado, contando as expiracoes (passos do duty) no intervalo
+    private void skipSquareTicks(int channelNum, int ticks) {
+    	int timer = channelTimer[channelNum];
+    	if (ticks > timer) {
+    		ticks -= timer + 1;
+    		int period = sqrTimerReload[channelNum] + 1;
+    		sqrDutyOffset[channelNum] = (sqrDutyOffset[channelNum] + 1 + ticks / period) & 0x7;
+    		channelTimer[channelNum] = sqrTimerReload[channelNum] - ticks % period;
+    	}
+    	else
+    		channelTimer[channelNum] = timer - ticks;
+    }
+
+    // idem para o ruido; o registrador de deslocamento avanca uma vez por expiracao
+    private void skipNoiseTicks(int ticks) {
+    	if (ticks > noiseTimer) {
+    		ticks -= noiseTimer + 1;
+    		int reload = noiseFreq[noiseRegisters[Globals.NOISE_REGISTER_1] & 0xF];
+    		int expirations = 1 + ticks / (reload + 1);
+    		for (int n = 0; n < expirations; n++)
+    			clockNoiseShiftRegister();
+    		noiseTimer = reload - ticks % (reload + 1);
+    	}
+    	else
+    		noiseTimer -= ticks;
+    }
+
+    void setHalted(boolean halted) {
+    	this.halted = halted;
+    	ApuWorker worker = this.worker;
+    	if (worker != null)
+    		worker.setHalted(halted);
+    }
 
-        dataLine.write(laBuffer, 0, AUDIO_BUFFER_SIZE);
+    // liga ou desliga o modo mudo; o destino continua recebendo quadros de silencio com o tamanho normal
+    void setMuted(boolean muted) {
+    	this.muted = muted;
+    	ApuWorker worker = this.worker;
+    	if (worker != null)
+    		worker.setMuted(muted);
+    }
+
+    boolean isMuted() {
+    	return muted;
+    }
+
+    // desliga os saltos entre eventos (skipCycles): a APU volta a ser emulada ciclo a ciclo (DifferentialGate)
+    void setStepEveryCycle(boolean enabled) {
+    	stepEveryCycle = enabled;
+    }
+
+    /* taxa de saida em amostras por segundo (Globals.MIN_SAMPLE_RATE a Globals.MAX_SAMPLE_RATE)
+     * o BlepBuffer converte do relogio da CPU para qualquer taxa; taxas menores custam menos processamento
+     * aplicada no fim do quadro, como o ajuste dinamico
+     */
+    void setSampleRate(int sampleRate) {
+    	if (sampleRate < Globals.MIN_SAMPLE_RATE || sampleRate > Globals.MAX_SAMPLE_RATE)
+    		throw new IllegalArgumentException("taxa de amostragem fora da faixa: " + sampleRate);
+    	this.sampleRate = sampleRate;
+    	ApuWorker worker = this.worker;
+    	if (worker != null)
+    		worker.setSampleRate(sampleRate);
+    	if (frameCycles == 0)
+    		updateOutputRate();
+    }
+
+    int getSampleRate() {
+    	return sampleRate;
+    }
+
+    /* ajuste fino da taxa de saida (1.0 = taxa configurada exata); o destino de audio usa para manter a fila
+     * no nivel desejado em vez de descartar quadros; limitado a MAX_RATE_ADJUST e aplicado no fim do quadro
+     */
+    void setRateAdjust(double adjust) {
+    	if (adjust > 1 + MAX_RATE_ADJUST)
+    		adjust = 1 + MAX_RATE_ADJUST;
+    	else if (adjust < 1 - MAX_RATE_ADJUST)
+    		adjust = 1 - MAX_RATE_ADJUST;
+    	rateAdjust = adjust;
+    	ApuWorker worker = this.worker;
+    	if (worker != null)
+    		worker.setRateAdjust(adjust);
+    	if (frameCycles == 0)
+    		updateOutputRate();
+    }
 
-        int available = dataLine.available();
-        while(available < (Globals.SAMPLE_RATE - (AUDIO_BUFFER_SIZE)))
-        	available = dataLine.available();
+    // so pode mudar com o quadro vazio (sem deltas posicionados na taxa anterior)
+    private void updateOutputRate() {
+    	double rate = sampleRate * rateAdjust;
+    	if (rate != outputRate) {
+    		outputRate = rate;
+    		blepBuffer.setSampleRate(rate);
+    	}
+    }
+
+    /* envia ao destino de audio as amostras do quadro ao final do mesmo
+     * sem ajuste a taxa de saida e exata sobre o relogio da CPU (a 48 Khz cerca de 799 amostras por quadro NTSC),
+     * logo nao ha sobra acumulada nem quadros de audio descartados
+     */
+    void audioPlayFrame() {
+    	if (worker != null) {
+    		// o quadro e sintetizado e entregue pela thread da ApuWorker
+    		worker.endFrame(frameCycles);
+    		frameCycles = 0;
+    		if (stopWorkerPending)
+    			finishWorker();
+    		return;
+    	}
+    	blepBuffer.endFrame(frameCycles);
+    	frameCycles = 0;
+    	updateOutputRate();
+        int length = blepBuffer.readSamples(outputBuffer, outputBuffer.length / 2) * 2;
+        if (halted || muted)
+        	Arrays.fill(outputBuffer, 0, length, (byte) 0);
+
+        audioSink.writeFrame(outputBuffer, length);
     }
     
     // registrador $4015 permite ativar ou desativar os canais
@@ -375,7 +696,7 @@ class Apu {
 	                updateLinearCounter();
 	    	        if (frameCounterIrqInhFlag == 0) {
 	    	        	frameIrqFlag = 0x40;
-	    	        	mapper.setInterruptSignal(Globals.INTERRUPT_FRAME_IRQ);
+	    	        	signalFrameIrq();
 	    	        }
 	                frameCounterstepsCounter = 0;
 	            }
@@ -532,12 +853,7 @@ void updateSquareSweep(int channelNum) {
     	
         if (noiseTimer < 0) {// cuando el Timer pasa de 0 a t, ** PLUS ONE *** cicla la Wave y restaura balor de timer
         	
-            noiseFeedbackBit = (noiseShiftRegister & 1) ^ ((noiseShiftRegister >> noiseModeRegister) & 1);
-            
-            if(noiseFeedbackBit == 1)
-            	noiseShiftRegister = ((noiseShiftRegister >> 1) | 0x4000);
-            else
-            	noiseShiftRegister = ((noiseShiftRegister >> 1) & 0x3fff);
+            clockNoiseShiftRegister();
             noiseTimer = noiseFreq[noiseRegisters[Globals.NOISE_REGISTER_1] & 0xF];
         
         }
@@ -549,6 +865,15 @@ void updateSquareSweep(int channelNum) {
         
     }
 
+    void clockNoiseShiftRegister() {
+        noiseFeedbackBit = (noiseShiftRegister & 1) ^ ((noiseShiftRegister >> noiseModeRegister) & 1);
+        
+        if(noiseFeedbackBit == 1)
+        	noiseShiftRegister = ((noiseShiftRegister >> 1) | 0x4000);
+        else
+        	noiseShiftRegister = ((noiseShiftRegister >> 1) & 0x3fff);
+    }
+
     // atualizacao do canal de PCM
     void updateDmcWave() {
 
@@ -570,15 +895,14 @@ void updateSquareSweep(int channelNum) {
        
         }
         if(dmcIrqFlag !=0) {
-        	mapper.setInterruptSignal(Globals.INTERRUPT_DMC_IRQ);
-        	mapper.setIrqDelayFlag(false);
+        	signalDmcIrq();
 
         }
     }
 
     void updateSampleBuffer() {
         if (dmcRemainSamples > 0) {
-            dmcSampleBuffer = mapper.ioRead(dmcSampleAddr++);
+            dmcSampleBuffer = readDmcSample(dmcSampleAddr++);
             updateDmcCycles = true;
             dmcSilenceFlag = false;
             dmcRemainSamples--;
@@ -790,7 +1114,7 @@ void updateSquareSweep(int channelNum) {
 	  if((value & 0x40) == 0x40) {
 		  frameCounterIrqInhFlag = 4;
 		  frameIrqFlag = 0;
-		  mapper.clearInterruptSignal(Globals.INTERRUPT_FRAME_IRQ);
+		  clearFrameIrq();
 
 	  }
 	  else
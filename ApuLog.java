@@ -0,0 +1,60 @@
+/**
+ * ApuLog.java
+ * Fila sem travas de eventos da APU (long) entre a thread da emulacao (produtor) e a thread de sintese (consumidor)
+ * mesmo esquema do AudioRing: cada thread so escreve o proprio indice, os indices ficam em linhas de cache separadas
+ * cada lado guarda a ultima posicao lida do outro e so consulta o indice compartilhado quando ela parece esgotada
+ */
+
+package com.jamicom;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class ApuLog {
+
+	private static final int PADDING = 16;
+	private static final int WRITE_INDEX = PADDING;
+	private static final int READ_INDEX = PADDING * 2;
+
+	private final long[] entries;
+	private final int mask;
+	private final AtomicLongArray indices;
+	private long cachedRead;		// visto pelo produtor
+	private long cachedWrite;		// visto pelo consumidor
+
+	ApuLog(int capacity) {
+		if (capacity <= 0 || (capacity & (capacity - 1)) != 0)
+			throw new IllegalArgumentException("capacidade deve ser potencia de 2: " + capacity);
+		entries = new long[capacity];
+		mask = capacity - 1;
+		indices = new AtomicLongArray(PADDING * 3);
+	}
+
+	// produtor: acrescenta a entrada; false se a fila estiver cheia
+	boolean offer(long entry) {
+		long write = indices.get(WRITE_INDEX);
+		if (write - cachedRead == entries.length) {
+			cachedRead = indices.get(READ_INDEX);
+			if (write - cachedRead == entries.length)
+				return false;
+		}
+		entries[(int) write & mask] = entry;
+		indices.lazySet(WRITE_INDEX, write + 1);
+		return true;
+	}
+
+	// consumidor: ha entradas para take()
+	boolean isEmpty() {
+		long read = indices.get(READ_INDEX);
+		if (read == cachedWrite)
+			cachedWrite = indices.get(WRITE_INDEX);
+		return read == cachedWrite;
+	}
+
+	// consumidor: retira a proxima entrada (somente apos isEmpty() == false)
+	long take() {
+		long read = indices.get(READ_INDEX);
+		long entry = entries[(int) read & mask];
+		indices.lazySet(READ_INDEX, read + 1);
+		return entry;
+	}
+}
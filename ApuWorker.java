@@ -0,0 +1,149 @@
+/**
+ * ApuWorker.java
+ * Sintese do audio da APU em outra thread (outro nucleo)
+ * a APU da emulacao fica no modo mudo (so o que a CPU enxerga: $4015, IRQs, busca da DMC) e registra no ApuLog
+ * cada escrita nos registradores com o ciclo em que ocorreu, cada byte lido pela DMC e o fim de cada quadro;
+ * esta thread reproduz o registro numa segunda APU (SynthApu), que gera as formas de onda e entrega o quadro
+ * ao destino de audio, cerca de um quadro atras da emulacao
+ * as duas APUs partem do mesmo estado e recebem as mesmas escritas, logo seguem identicas
+ */
+
+package com.jamicom;
+
+import java.util.concurrent.locks.LockSupport;
+
+class ApuWorker implements Runnable {
+
+	private static final int LOG_SIZE = 1 << 14;			// entradas (escritas e bytes da DMC de varios quadros)
+	private static final int DMC_FIFO_SIZE = 1 << 12;		// bytes da DMC ainda nao consumidos pela SynthApu
+	private static final long IDLE_NANOS = 10000000L;		// espera maxima sem quadros novos (10 ms)
+
+	// tipo da entrada nos bits altos; ciclo no quadro nos bits 16-47; endereco (0x00-0x17) e valor nos bits baixos
+	private static final int TYPE_SHIFT = 60;
+	private static final int TYPE_WRITE = 1;
+	private static final int TYPE_DMC_SAMPLE = 2;
+	private static final int TYPE_FRAME_END = 3;
+
+	private final ApuLog log;
+	private final SynthApu synth;
+	private final int[] dmcSamples;
+	private int dmcHead;
+	private int dmcTail;
+	private final Thread thread;
+	private volatile boolean running;
+
+	// configuracoes da thread da emulacao, aplicadas pela sintese no fim de cada quadro
+	private volatile int sampleRate = Globals.SAMPLE_RATE;
+	private volatile double rateAdjust = 1.0;
+	private volatile boolean halted;
+	private volatile boolean muted;
+
+	ApuWorker(AudioSink audioSink) {
+		log = new ApuLog(LOG_SIZE);
+		synth = new SynthApu(this, audioSink);
+		dmcSamples = new int[DMC_FIFO_SIZE];
+		running = true;
+		thread = new Thread(this, "apu");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// thread da emulacao: registra os eventos da APU
+
+	void logWrite(int cycle, int addr, int value) {
+		put((long) TYPE_WRITE << TYPE_SHIFT | (long) cycle << 16 | (addr & 0xFF) << 8 | value);
+	}
+
+	void logDmcSample(int value) {
+		put((long) TYPE_DMC_SAMPLE << TYPE_SHIFT | value);
+	}
+
+	void endFrame(int cycles) {
+		put((long) TYPE_FRAME_END << TYPE_SHIFT | (long) cycles << 16);
+		LockSupport.unpark(thread);
+	}
+
+	// fila cheia: a sintese esta atrasada, a emulacao aguarda (depois de stop() a entrada e descartada)
+	private void put(long entry) {
+		while (!log.offer(entry)) {
+			if (!running)
+				return;
+			LockSupport.unpark(thread);
+			LockSupport.parkNanos(100000L);
+		}
+	}
+
+	void setSampleRate(int sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	void setRateAdjust(double rateAdjust) {
+		this.rateAdjust = rateAdjust;
+	}
+
+	void setHalted(boolean halted) {
+		this.halted = halted;
+	}
+
+	void setMuted(boolean muted) {
+		this.muted = muted;
+	}
+
+	// encerra a thread depois de sintetizar o que ja esta no registro e aguarda o termino
+	void stop() {
+		running = false;
+		LockSupport.unpark(thread);
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	// thread de sintese
+
+	public void run() {
+		while (true) {
+			// running e lido antes do registro: o que foi registrado antes de stop() ainda e sintetizado
+			boolean stopping = !running;
+			if (log.isEmpty()) {
+				if (stopping)
+					return;
+				LockSupport.parkNanos(this, IDLE_NANOS);
+				continue;
+			}
+			long entry = log.take();
+			int cycle = (int) (entry >>> 16);
+			switch ((int) (entry >>> TYPE_SHIFT)) {
+				case TYPE_WRITE:
+					synth.advanceTo(cycle);
+					synth.registerWrite(0x4000 + ((int) entry >> 8 & 0xFF), (int) entry & 0xFF);
+					break;
+				case TYPE_DMC_SAMPLE:
+					dmcSamples[dmcTail++ & (DMC_FIFO_SIZE - 1)] = (int) entry & 0xFF;
+					break;
+				case TYPE_FRAME_END:
+					synth.advanceTo(cycle);
+					synth.setSampleRate(sampleRate);
+					synth.setRateAdjust(rateAdjust);
+					synth.setHalted(halted);
+					synth.setMuted(muted);
+					synth.audioPlayFrame();
+					break;
+			}
+		}
+	}
+
+	// byte da DMC na mesma ordem em que a APU da emulacao leu da memoria
+	int nextDmcSample() {
+		if (dmcHead == dmcTail)
+			return 0;
+		return dmcSamples[dmcHead++ & (DMC_FIFO_SIZE - 1)];
+	}
+}
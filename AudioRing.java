@@ -0,0 +1,67 @@
+/**
+ * AudioRing.java
+ * Fila circular sem travas para um unico produtor (thread da emulacao) e um unico consumidor (thread de audio)
+ * os dados ficam num array de bytes; cada thread so escreve o proprio indice e le o da outra
+ * os indices ficam afastados dentro de um AtomicLongArray para nao dividirem a mesma linha de cache
+ * a capacidade e potencia de 2 e as escritas/leituras devem usar quantidades pares (amostras de 16 bits)
+ */
+
+package com.jamicom;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class AudioRing {
+
+	private static final int PADDING = 16;				// 16 longs = 128 bytes entre os indices
+	private static final int WRITE_INDEX = PADDING;
+	private static final int READ_INDEX = PADDING * 2;
+
+	private final byte[] buffer;
+	private final int mask;
+	private final AtomicLongArray indices;		// contadores de bytes escritos e lidos desde o inicio
+
+	AudioRing(int capacity) {
+		if (capacity <= 0 || (capacity & (capacity - 1)) != 0)
+			throw new IllegalArgumentException("capacidade deve ser potencia de 2: " + capacity);
+		buffer = new byte[capacity];
+		mask = capacity - 1;
+		indices = new AtomicLongArray(PADDING * 3);
+	}
+
+	int capacity() {
+		return buffer.length;
+	}
+
+	// bytes prontos para leitura
+	int available() {
+		return (int) (indices.get(WRITE_INDEX) - indices.get(READ_INDEX));
+	}
+
+	// produtor: copia ate length bytes e retorna quantos couberam
+	int write(byte[] source, int offset, int length) {
+		long write = indices.get(WRITE_INDEX);
+		int count = Math.min(length, buffer.length - (int) (write - indices.get(READ_INDEX)));
+		if (count <= 0)
+			return 0;
+		int start = (int) write & mask;
+		int first = Math.min(count, buffer.length - start);
+		System.arraycopy(source, offset, buffer, start, first);
+		System.arraycopy(source, offset + first, buffer, 0, count - first);
+		indices.lazySet(WRITE_INDEX, write + count);	// publica os dados apos a copia
+		return count;
+	}
+
+	// consumidor: copia ate length bytes e retorna quantos havia
+	int read(byte[] destination, int offset, int length) {
+		long read = indices.get(READ_INDEX);
+		int count = Math.min(length, (int) (indices.get(WRITE_INDEX) - read));
+		if (count <= 0)
+			return 0;
+		int start = (int) read & mask;
+		int first = Math.min(count, buffer.length - start);
+		System.arraycopy(buffer, start, destination, offset, first);
+		System.arraycopy(buffer, 0, destination, offset + first, count - first);
+		indices.lazySet(READ_INDEX, read + count);		// libera o espaco apos a copia
+		return count;
+	}
+}
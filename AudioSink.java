@@ -0,0 +1,20 @@
+/**
+ * AudioSink.java
+ * Destino das amostras de audio produzidas pela APU (placa de som, arquivo, descarte em lote)
+ * as amostras sao de 16 bits, mono, big-endian, na taxa configurada no Emulator (padrao Globals.SAMPLE_RATE)
+ * o buffer e reaproveitado no quadro seguinte
+ */
+
+package com.jamicom;
+
+public interface AudioSink {
+
+	// chamado ao final de cada quadro com as amostras do quadro
+	void writeFrame(byte[] samples, int length);
+
+	// descarta o audio (execucao sem placa de som e sem limitar a velocidade)
+	AudioSink NONE = new AudioSink() {
+		public void writeFrame(byte[] samples, int length) {
+		}
+	};
+}
@@ -0,0 +1,241 @@
+/**
+ * BatchRunner.java
+ * Executa varias sessoes de emulacao sem tela e sem som em paralelo, uma instancia de Emulator por ROM
+ * as sessoes sao distribuidas num ForkJoinPool (roubo de tarefas) usando todos os nucleos da maquina
+ * ao final informa, para cada sessao, quadros por segundo e hashes da tela e da RAM no ultimo quadro
+ * (usado em varreduras de regressao e geracao de dados)
+ *
+ * uso: java com.jamicom.BatchRunner [-frames N] [-threads N] [-rate Hz] [-wav diretorio] [-jit] [-list arquivo] rom[:movie.fm2] ...
+ * sem -wav o audio e descartado, logo por padrao a APU roda no modo mudo (sem sintese, estado e IRQs exatos);
+ * -rate sintetiza o audio na taxa informada (medicao do custo do audio)
+ * -wav grava o audio de cada sessao em diretorio/<rom>.wav, ou <rom>-<movie>.wav com gravacao (FileAudioSink),
+ * na taxa de -rate ou na padrao; se o nome ja foi usado por outra sessao (mesmo nome em diretorios diferentes)
+ * recebe o sufixo -2, -3, ... e o arquivo de cada sessao aparece no relatorio
+ * -jit liga o recompilador de blocos quentes da CPU (Recompiler) em cada sessao
+ * no arquivo de lista cada linha contem "rom [movie.fm2]"; linhas vazias ou iniciadas por # sao ignoradas
+ */
+
+package com.jamicom;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class BatchRunner {
+
+	private int frames;
+	private int sampleRate;		// 0 = modo mudo
+	private File wavDirectory;	// captura do audio (null = descartado)
+	private boolean recompiler;
+	private ForkJoinPool pool;
+
+	// uma sessao: ROM, gravacao opcional e resultado da execucao
+	static class Session {
+		final String romPath;
+		final String moviePath;
+		File wavFile;		// captura do audio (definido em run() com -wav)
+		long framesRun;
+		double framesPerSecond;
+		long screenHash;
+		long ramHash;
+		String error;
+
+		Session(String romPath, String moviePath) {
+			this.romPath = romPath;
+			this.moviePath = moviePath;
+		}
+	}
+
+	BatchRunner(int frames, int threads, int sampleRate, File wavDirectory, boolean recompiler) {
+		this.frames = frames;
+		this.sampleRate = sampleRate;
+		this.wavDirectory = wavDirectory;
+		this.recompiler = recompiler;
+		pool = new ForkJoinPool(threads);
+	}
+
+	/* executa todas as sessoes em paralelo e aguarda o termino; os resultados ficam nas proprias sessoes
+	 * com -wav cada sessao grava no proprio arquivo (nome repetido ganha um sufixo numerico)
+	 */
+	void run(List<Session> sessions) {
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		Set<String> wavNames = new HashSet<String>();
+		for (final Session session : sessions) {
+			if (wavDirectory != null) {
+				String name = wavName(session);
+				for (int copy = 2; !wavNames.add(name.toLowerCase() + ".wav"); copy++)
+					name = wavName(session) + "-" + copy;
+				session.wavFile = new File(wavDirectory, name + ".wav");
+			}
+			tasks.add(pool.submit(new Runnable() {
+				public void run() {
+					runSession(session);
+				}
+			}));
+		}
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+	}
+
+	void shutdown() {
+		pool.shutdown();
+	}
+
+	private void runSession(Session session) {
+		FileAudioSink audioSink = null;
+		try {
+			Cartridge cartridge = new Cartridge(new File(session.romPath));
+			if (!Emulator.isMapperSupported(cartridge.getMapperNum())) {
+				session.error = "mapper " + cartridge.getMapperNum() + " nao suportado";
+				return;
+			}
+			InputSource input = InputSource.NONE;
+			if (session.moviePath != null)
+				input = new MovieInput(new File(session.moviePath));
+
+			if (session.wavFile != null)
+				audioSink = new FileAudioSink(session.wavFile, sampleRate > 0 ? sampleRate : Globals.SAMPLE_RATE);
+
+			Emulator emulator = new Emulator(VideoSink.NONE, audioSink != null ? audioSink : AudioSink.NONE, input);
+			emulator.setRecompilerEnabled(recompiler);
+			emulator.loadCartridge(cartridge);
+			if (sampleRate > 0)
+				emulator.setSampleRate(sampleRate);
+			else if (audioSink == null)
+				emulator.setAudioMuted(true);
+
+			long start = System.nanoTime();
+			emulator.runFrames(frames);
+			long elapsed = System.nanoTime() - start;
+
+			session.framesRun = emulator.getFrameCount();
+			session.framesPerSecond = elapsed > 0 ? session.framesRun * 1e9 / elapsed : 0;
+			session.screenHash = hash(emulator.getScreen().getScreenBuffer());
+			session.ramHash = hash(emulator.getConsole().getSystemRam());
+			if (audioSink != null) {
+				FileAudioSink finished = audioSink;
+				audioSink = null;
+				finished.close();
+			}
+		}
+		catch (IOException e) {
+			session.error = e.toString();
+		}
+		catch (RuntimeException e) {
+			session.error = e.toString();
+		}
+		finally {
+			// sessao com erro: fecha o arquivo sem mascarar o erro original
+			if (audioSink != null) {
+				try {
+					audioSink.close();
+				}
+				catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	// <rom> ou <rom>-<movie> (nomes sem diretorio e sem extensao), sem o .wav
+	static String wavName(Session session) {
+		String name = baseName(session.romPath);
+		if (session.moviePath != null)
+			name += "-" + baseName(session.moviePath);
+		return name;
+	}
+
+	private static String baseName(String path) {
+		String name = new File(path).getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	// FNV-1a de 64 bits sobre os valores do array
+	static long hash(int[] values) {
+		long hash = 0xcbf29ce484222325L;
+		for (int n = 0; n < values.length; n++) {
+			hash ^= values[n];
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	static void readList(String listPath, List<Session> sessions) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(listPath));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] fields = line.split("\\s+");
+				sessions.add(new Session(fields[0], fields.length > 1 ? fields[1] : null));
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int frames = 600;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int sampleRate = 0;
+		File wavDirectory = null;
+		boolean recompiler = false;
+		List<Session> sessions = new ArrayList<Session>();
+
+		for (int n = 0; n < args.length; n++) {
+			if (args[n].equals("-frames"))
+				frames = Integer.parseInt(args[++n]);
+			else if (args[n].equals("-threads"))
+				threads = Integer.parseInt(args[++n]);
+			else if (args[n].equals("-rate"))
+				sampleRate = Integer.parseInt(args[++n]);
+			else if (args[n].equals("-wav"))
+				wavDirectory = new File(args[++n]);
+			else if (args[n].equals("-jit"))
+				recompiler = true;
+			else if (args[n].equals("-list"))
+				readList(args[++n], sessions);
+			else {
+				int separator = args[n].lastIndexOf(':');
+				if (separator > 1)
+					sessions.add(new Session(args[n].substring(0, separator), args[n].substring(separator + 1)));
+				else
+					sessions.add(new Session(args[n], null));
+			}
+		}
+		if (sessions.isEmpty()) {
+			System.out.println("uso: BatchRunner [-frames N] [-threads N] [-rate Hz] [-wav diretorio] [-jit] [-list arquivo] rom[:movie.fm2] ...");
+			return;
+		}
+
+		BatchRunner runner = new BatchRunner(frames, threads, sampleRate, wavDirectory, recompiler);
+		long start = System.nanoTime();
+		runner.run(sessions);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		runner.shutdown();
+
+		long totalFrames = 0;
+		for (Session session : sessions) {
+			if (session.error != null)
+				System.out.printf("%s\tERRO\t%s%n", session.romPath, session.error);
+			else {
+				System.out.printf("%s\t%d quadros\t%.1f fps\ttela=%016x\tram=%016x%s%n", session.romPath,
+						session.framesRun, session.framesPerSecond, session.screenHash, session.ramHash,
+						session.wavFile != null ? "\taudio=" + session.wavFile.getName() : "");
+				totalFrames += session.framesRun;
+			}
+		}
+		System.out.printf("total: %d sessoes, %d quadros em %.2f s (%.1f fps agregados, %d threads)%n",
+				sessions.size(), totalFrames, seconds, totalFrames / seconds, threads);
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * BlepBuffer.java
+ * Buffer de sintese por degraus de banda limitada (BLEP) para o audio da APU
+ * a APU informa apenas as variacoes de amplitude (deltas) no ciclo da CPU em que acontecem;
+ * cada delta e espalhado por um nucleo sinc janelado na posicao fracionaria equivalente na taxa de saida,
+ * e as amostras sao obtidas integrando o buffer: o degrau chega filtrado (sem aliasing) e sem media por caixa
+ * entre duas leituras cabem no maximo (tamanho do buffer - largura do nucleo) amostras
+ * a taxa de saida pode ser ajustada entre quadros (controle dinamico de taxa do destino de audio)
+ */
+
+package com.jamicom;
+
+import java.util.Arrays;
+
+class BlepBuffer {
+
+	private static final int PHASE_BITS = 6;				// 64 posicoes fracionarias entre duas amostras
+	private static final int PHASES = 1 << PHASE_BITS;
+	private static final int TAPS = 16;						// largura do nucleo em amostras de saida
+	private static final int KERNEL_BITS = 12;				// cada fase do nucleo soma exatamente 1 << KERNEL_BITS
+	private static final int TIME_BITS = 32;				// fracao da posicao em ponto fixo
+	private static final double CUTOFF = 0.95;				// frequencia de corte em relacao a Nyquist
+
+	private static final int[][] kernel = new int[PHASES][TAPS];
+
+	// nucleo sinc com janela de Blackman, uma copia deslocada para cada fase
+	static {
+		for (int phase = 0; phase < PHASES; phase++) {
+			double[] taps = new double[TAPS];
+			double sum = 0;
+			for (int t = 0; t < TAPS; t++) {
+				double x = t - (TAPS / 2 - 1) - (double) phase / PHASES;
+				double sinc = x == 0 ? 1 : Math.sin(Math.PI * CUTOFF * x) / (Math.PI * CUTOFF * x);
+				double window = 0.42 + 0.5 * Math.cos(2 * Math.PI * x / TAPS) + 0.08 * Math.cos(4 * Math.PI * x / TAPS);
+				taps[t] = Math.abs(x) < TAPS / 2 ? sinc * window : 0;
+				sum += taps[t];
+			}
+			// normaliza em inteiros e corrige o arredondamento no maior coeficiente para o degrau ser exato
+			int total = 0;
+			int largest = 0;
+			for (int t = 0; t < TAPS; t++) {
+				kernel[phase][t] = (int) Math.round(taps[t] / sum * (1 << KERNEL_BITS));
+				total += kernel[phase][t];
+				if (kernel[phase][t] > kernel[phase][largest])
+					largest = t;
+			}
+			kernel[phase][largest] += (1 << KERNEL_BITS) - total;
+		}
+	}
+
+	private final double clockRate;
+	private long factor;			// amostras de saida por ciclo de entrada (ponto fixo)
+	private final int[] buffer;		// deltas ja filtrados, indexados pela amostra de saida
+	private long offset;			// inicio do quadro atual (ponto fixo, relativo a buffer[0])
+	private int integrator;			// amplitude acumulada ate a ultima amostra lida
+
+	// clockRate: ciclos de entrada por segundo (CPU); sampleRate: amostras de saida por segundo; size: capacidade em amostras
+	BlepBuffer(double clockRate, int sampleRate, int size) {
+		this.clockRate = clockRate;
+		setSampleRate(sampleRate);
+		buffer = new int[size + TAPS];
+	}
+
+	// altera a taxa de saida; deve ser chamado entre quadros (apos endFrame) para nao deslocar os deltas ja inseridos
+	void setSampleRate(double sampleRate) {
+		factor = (long) (sampleRate / clockRate * (1L << TIME_BITS));
+	}
+
+	// acrescenta uma variacao de amplitude no ciclo informado (relativo ao inicio do quadro atual)
+	void addDelta(int cycle, int delta) {
+		long position = offset + cycle * factor;
+		int index = (int) (position >>> TIME_BITS);
+		int[] taps = kernel[(int) (position >>> (TIME_BITS - PHASE_BITS)) & (PHASES - 1)];
+		for (int t = 0; t < TAPS; t++)
+			buffer[index + t] += delta * taps[t];
+	}
+
+	// encerra o quadro apos o numero de ciclos informado; as amostras ate esse ponto ficam disponiveis
+	void endFrame(int cycles) {
+		offset += cycles * factor;
+	}
+
+	int samplesAvailable() {
+		return (int) (offset >>> TIME_BITS);
+	}
+
+	/* le ate count amostras de 16 bits com sinal (big endian, formato da linha de audio) para output
+	 * a amplitude da APU (0 a 0xFFFF) e centrada em zero como na mixagem original; retorna o numero de amostras lidas
+	 */
+	int readSamples(byte[] output, int count) {
+		int available = samplesAvailable();
+		if (count > available)
+			count = available;
+		int sum = integrator;
+		for (int n = 0, m = 0; n < count; n++) {
+			sum += buffer[n];
+			int sample = (sum >> KERNEL_BITS) - 0x8000;
+			if (sample > Short.MAX_VALUE)
+				sample = Short.MAX_VALUE;
+			else if (sample < Short.MIN_VALUE)
+				sample = Short.MIN_VALUE;
+			output[m++] = (byte) (sample >> 8);
+			output[m++] = (byte) sample;
+		}
+		integrator = sum;
+
+		// move os deltas ainda nao lidos (incluindo a cauda do nucleo) para o inicio do buffer
+		int remaining = available - count + TAPS;
+		System.arraycopy(buffer, count, buffer, 0, remaining);
+		Arrays.fill(buffer, remaining, remaining + count, 0);
+		offset -= (long) count << TIME_BITS;
+		return count;
+	}
+}
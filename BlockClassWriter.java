@@ -0,0 +1,246 @@
+/**
+ * BlockClassWriter.java
+ * Gerador minimo de arquivos .class para os blocos do recompilador (Recompiler)
+ * cada classe tem um construtor vazio e um unico metodo de codigo linear (sem desvios), o que dispensa
+ * a StackMapTable; o construtor de codigo oferece so as instrucoes da JVM usadas pelo recompilador
+ * formato: especificacao da JVM, capitulo 4
+ */
+
+package com.jamicom;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+class BlockClassWriter {
+
+	private static final int CLASS_VERSION = 61;		// Java 17
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	// instrucoes da JVM
+	static final int ICONST_0 = 0x03;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC_W = 0x13;
+	static final int ILOAD = 0x15;
+	static final int ALOAD = 0x19;
+	static final int IALOAD = 0x2E;
+	static final int ISTORE = 0x36;
+	static final int IASTORE = 0x4F;
+	static final int DUP = 0x59;
+	static final int IADD = 0x60;
+	static final int ISUB = 0x64;
+	static final int IMUL = 0x68;
+	static final int INEG = 0x74;
+	static final int ISHL = 0x78;
+	static final int ISHR = 0x7A;
+	static final int IUSHR = 0x7C;
+	static final int IAND = 0x7E;
+	static final int IOR = 0x80;
+	static final int IXOR = 0x82;
+	static final int IRETURN = 0xAC;
+	static final int RETURN = 0xB1;
+	static final int GETFIELD = 0xB4;
+	static final int PUTFIELD = 0xB5;
+	static final int INVOKESPECIAL = 0xB7;
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+	private int poolCount = 1;
+
+	private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+	private int maxStack;
+	private int stack;
+
+	// constantes
+
+	private int constant(String key, int tag, byte[] data) {
+		Integer index = poolIndex.get(key);
+		if (index != null)
+			return index;
+		pool.write(tag);
+		pool.write(data, 0, data.length);
+		poolIndex.put(key, poolCount);
+		return poolCount++;
+	}
+
+	int utf8(String value) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			new DataOutputStream(bytes).writeUTF(value);
+			return constant("U" + value, 1, bytes.toByteArray());
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	int classRef(String name) {
+		return constant("C" + name, 7, u2(utf8(name)));
+	}
+
+	int fieldRef(String owner, String name, String descriptor) {
+		return constant("F" + owner + "." + name + ":" + descriptor, 9, u2u2(classRef(owner), nameAndType(name, descriptor)));
+	}
+
+	int methodRef(String owner, String name, String descriptor) {
+		return constant("M" + owner + "." + name + descriptor, 10, u2u2(classRef(owner), nameAndType(name, descriptor)));
+	}
+
+	private int nameAndType(String name, String descriptor) {
+		return constant("N" + name + ":" + descriptor, 12, u2u2(utf8(name), utf8(descriptor)));
+	}
+
+	private int integer(int value) {
+		return constant("I" + value, 3, new byte[] {(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value});
+	}
+
+	private static byte[] u2(int value) {
+		return new byte[] {(byte) (value >> 8), (byte) value};
+	}
+
+	private static byte[] u2u2(int first, int second) {
+		return new byte[] {(byte) (first >> 8), (byte) first, (byte) (second >> 8), (byte) second};
+	}
+
+	// codigo do metodo; a altura da pilha e acompanhada para calcular max_stack
+
+	private void grow(int delta) {
+		stack += delta;
+		if (stack > maxStack)
+			maxStack = stack;
+	}
+
+	void op(int opcode, int stackDelta) {
+		code.write(opcode);
+		grow(stackDelta);
+	}
+
+	// operacoes binarias sobre int (IADD, IAND...): consomem dois valores e deixam um
+	void binary(int opcode) {
+		op(opcode, -1);
+	}
+
+	void push(int value) {
+		if (value >= -1 && value <= 5)
+			code.write(ICONST_0 + value);
+		else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			code.write(BIPUSH);
+			code.write(value);
+		}
+		else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			code.write(SIPUSH);
+			code.write(value >> 8);
+			code.write(value);
+		}
+		else {
+			int index = integer(value);
+			code.write(LDC_W);
+			code.write(index >> 8);
+			code.write(index);
+		}
+		grow(1);
+	}
+
+	void iload(int local) {
+		code.write(ILOAD);
+		code.write(local);
+		grow(1);
+	}
+
+	void istore(int local) {
+		code.write(ISTORE);
+		code.write(local);
+		grow(-1);
+	}
+
+	void aload(int local) {
+		code.write(ALOAD);
+		code.write(local);
+		grow(1);
+	}
+
+	void getField(int fieldRef) {
+		code.write(GETFIELD);
+		code.write(fieldRef >> 8);
+		code.write(fieldRef);
+	}
+
+	void putField(int fieldRef) {
+		code.write(PUTFIELD);
+		code.write(fieldRef >> 8);
+		code.write(fieldRef);
+		grow(-2);
+	}
+
+	int codeSize() {
+		return code.size();
+	}
+
+	/* monta a classe: final, estende Object, implementa a interface informada, construtor publico vazio
+	 * e o metodo publico com o codigo emitido ate aqui (que deve terminar com um retorno)
+	 */
+	byte[] toClass(String name, String iface, String methodName, String methodDescriptor, int maxLocals) {
+		int thisClass = classRef(name);
+		int superClass = classRef("java/lang/Object");
+		int ifaceClass = classRef(iface);
+		int objectInit = methodRef("java/lang/Object", "<init>", "()V");
+		int initName = utf8("<init>");
+		int initDescriptor = utf8("()V");
+		int methodNameIndex = utf8(methodName);
+		int methodDescriptorIndex = utf8(methodDescriptor);
+		int codeName = utf8("Code");
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + pool.size() + code.size());
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(CLASS_VERSION);
+			out.writeShort(poolCount);
+			pool.writeTo(out);
+			out.writeShort(ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(ifaceClass);
+			out.writeShort(0);		// campos
+			out.writeShort(2);		// metodos
+
+			// public <init>() { super(); }
+			byte[] init = {(byte) 0x2A, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN};
+			out.writeShort(ACC_PUBLIC);
+			out.writeShort(initName);
+			out.writeShort(initDescriptor);
+			writeCode(out, codeName, 1, 1, init);
+
+			out.writeShort(ACC_PUBLIC | ACC_FINAL);
+			out.writeShort(methodNameIndex);
+			out.writeShort(methodDescriptorIndex);
+			writeCode(out, codeName, maxStack, maxLocals, code.toByteArray());
+
+			out.writeShort(0);		// atributos da classe
+			out.flush();
+			return bytes.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeCode(DataOutputStream out, int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+		out.writeShort(1);		// atributos do metodo
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0);		// tabela de excecoes
+		out.writeShort(0);		// atributos do Code
+	}
+}
@@ -25,6 +25,27 @@ public class Cartridge {
 	private int[] chr;
 	private String nomeRom;
 	
+	/* cache de tiles: cada linha de 8 pixels do CHR fica pre-decodificada em 16 bits (2 bits por pixel)
+	 * chrRows guarda o pixel do bit k do padrao nos bits 2k (ordem usada pelo cenario e por sprites com flip X)
+	 * chrRowsReversed guarda a linha espelhada, pixel mais a esquerda nos bits 0-1 (sprites sem flip)
+	 * indexadas pelo endereco do CHR, logo a troca das tabelas de padroes nao invalida nada
+	 */
+	private int[] chrRows;
+	private int[] chrRowsReversed;
+	private static final int[] bitSpread = new int[256];
+	private static final int[] bitSpreadReversed = new int[256];
+	
+	static {
+		for (int b = 0; b < 256; b++) {
+			for (int k = 0; k < 8; k++) {
+				if (((b >> k) & 1) == 1) {
+					bitSpread[b] |= 1 << (k * 2);
+					bitSpreadReversed[b] |= 1 << ((7 - k) * 2);
+				}
+			}
+		}
+	}
+	
 	public Cartridge(File fileName) throws IOException {
 	
 		InputStream input;
@@ -40,6 +61,15 @@ public class Cartridge {
 		else
 			input = new FileInputStream(fileName);
 		
+		load(input);
+	}
+
+	// imagem iNES ja em memoria ou em outra origem (ROMs sinteticas dos benchmarks)
+	Cartridge(InputStream input) throws IOException {
+		load(input);
+	}
+
+	private void load(InputStream input) throws IOException {
 		// extrai o cabe�alho
 		romHeader = new int[HEADER_SIZE];
 		for(int n=0; n < HEADER_SIZE; n++)
@@ -62,6 +92,22 @@ public class Cartridge {
 			chr[n] = input.read();
 		
 		input.close();
+		
+		// decodifica todas as linhas de tiles (CHR-RAM e redecodificada a cada escrita)
+		chrRows = new int[chr.length / 2];
+		chrRowsReversed = new int[chr.length / 2];
+		for(int n=0; n < chr.length; n += 16)
+			for(int row=0; row < 8; row++)
+				decodeChrRow(n + row);
+	}
+
+	// combina os dois planos de bits de uma linha do tile (addr = byte do primeiro plano)
+	private void decodeChrRow(int addr) {
+		int index = ((addr >> 4) << 3) | (addr & 7);
+		int plane0 = chr[addr] & 0xff;
+		int plane1 = chr[addr + 8] & 0xff;
+		chrRows[index] = bitSpread[plane0] | (bitSpread[plane1] << 1);
+		chrRowsReversed[index] = bitSpreadReversed[plane0] | (bitSpreadReversed[plane1] << 1);
 	}
 
 	public int getNumPrg() {
@@ -73,7 +119,7 @@ public class Cartridge {
 	    return romHeader[CHR_BYTE];
 	}
 
-	// obtem numero do mapper (descricao na classe Jamicom)
+	// obtem numero do mapper (descricao na classe Emulator)
 	public int getMapperNum() {
 	    return (romHeader[MAPPER_BYTE] >> 4) | (romHeader[MAPPER_BYTE + 1] & 0xF0);
 	}
@@ -93,13 +139,28 @@ public class Cartridge {
 		return prg[addr];
 	}
 	
+	// acesso direto ao array de programa para a tabela de paginas do mapper
+	int[] getPrg() {
+		return prg;
+	}
+	
 	public void chrWrite(int addr, int value) {
 		chr[addr] = value;
+		decodeChrRow(addr & ~8);
 	}
 
 	public int chrRead(int addr) {	
 		return chr[addr];
 	}
+
+	// linha de 8 pixels ja decodificada (addr = byte do primeiro plano da linha)
+	int chrRowRead(int addr) {
+		return chrRows[((addr >> 4) << 3) | (addr & 7)];
+	}
+
+	int chrRowReadReversed(int addr) {
+		return chrRowsReversed[((addr >> 4) << 3) | (addr & 7)];
+	}
 	
 	public String getNombre() {
 		return nomeRom;
@@ -1,11 +1,14 @@
 /**
  * Console.java
  * Define objeto do tipo Console
- * Integra os subsistemas e executa o loop principal da aplicacao
- * o loop é executado 60 vezes por segundo produzindo os 60 quadros do videogame original
+ * Integra os subsistemas e executa cada quadro pedido pelo Emulator
+ * o quadro é executado 60 vezes por segundo produzindo os 60 quadros do videogame original
  * cada quadro é composto de 262 linhas, sendo que as linhas de 0 a 239 sao exibidas na tela
- * a cada linha sao atualizados: graficos (tela); sons; mapper e sao executados 114 ciclos da CPU
- * ao final das 262 linhas a tela é renderizada no canvas e as amostras de som enviadas para a saida
+ * o tempo e contado por um relogio mestre em pontos da PPU (3 por ciclo da CPU, 341 por linha)
+ * a CPU executa sem interrupcao ate o proximo evento da agenda (Scheduler): fim de quadro, NMI,
+ * passos do frame counter e busca da DMC da APU, IRQ do mapper e verificacao de interrupcoes
+ * PPU e APU guardam o instante ate onde ja foram atualizadas e so se sincronizam quando acessadas
+ * ao final das 262 linhas o Emulator entrega a tela e as amostras de som aos seus destinos
  */
 
 package com.jamicom;
@@ -17,88 +20,108 @@ public class Console {
 	private Ppu ppu;
 	private Cpu cpu;
 	private Apu apu;
-	private Jamicom jamicom;
-	private Canvas canvas;
-
-	private GamePad gamepad;
 	private Mapper mapper;
 	private int[] systemRam;	    	
-	public int scanline;
-	private static final int[] scanlineCycles = { 114, 114, 113 };
-	private int scanlineCycleIndex =0;
+	private Scheduler scheduler;
+	private long masterClock;		// inicio da execucao atual da CPU (Cpu.run), em pontos da PPU
+	private boolean frameComplete;
+	private static final long FRAME_DOTS = (long) Globals.SCANLINES_PER_FRAME * Globals.DOTS_PER_SCANLINE;
 
 	public Console() throws IOException {
 		systemRam = new int[0x800];
-		
+		scheduler = new Scheduler();
 	}
 	
-	void setup(Jamicom jamicom) {
-		this.jamicom = jamicom;
-		ppu = jamicom.getPpu();
-		cpu = jamicom.getCpu();
-		apu = jamicom.getApu();
-		canvas = jamicom.getCanvas();
-		gamepad = jamicom.getGamePad();
-		mapper = jamicom.getMapper();		
+	void setup(Emulator emulator) {
+		ppu = emulator.getPpu();
+		cpu = emulator.getCpu();
+		apu = emulator.getApu();
+		mapper = emulator.getMapper();		
+	}
+
+	// reinicia o relogio mestre e agenda os eventos iniciais (chamado apos o setup de todos os subsistemas)
+	void reset() {
+		scheduler.clear();
+		masterClock = 0;
+		scheduler.schedule(Scheduler.EVENT_FRAME_END, FRAME_DOTS);
+		scheduler.schedule(Scheduler.EVENT_VBLANK_NMI, (long) Globals.VBLANK_SCANLINE * Globals.DOTS_PER_SCANLINE + 1);
+		apu.scheduleEvents();
 	}
 	
-	 void startEmulation() throws InterruptedException {	 
+	 // executa um quadro (60 quadros por segundo) alternando entre os eventos vencidos e a CPU
+	 void runFrame() {
+		 frameComplete = false;
+		 while(!frameComplete) {
+			 if(scheduler.nextEventTime() <= masterClock)
+				 handleEvent(scheduler.popEvent());
+			 else
+				 runCpu();
+		 }
+	 }
 
-		 int cyclesToUpdate = 0;
-		 while(Globals.EMULA) { 		 
-    	    scanline = 0;
-    	    
-    	    // executa um quadro (60 quadros por segundo)
-    	    while (scanline < 262) {
-    	    	if ( (scanline >= 0) && (scanline < 240)) { // visible
-    	    		
-    	    		// calcula uma linha de elementos do jogo (sprites)
-    	            if (ppu.sprRenderEnabled)
-    	                ppu.renderSprites(scanline);
-    	            
-    	            // calcula uma linha de cenario (background)
-    	            if(ppu.bgRenderEnabled) 
-    	            	ppu.updateBgLine(scanline);
-    	                  	
-    	    	}
-    	    	ppu.renderScanline(ppu.ciclosSobrando , scanline);
+	 // executa instrucoes ate alcancar o proximo evento agendado; se a agenda mudar no meio, a CPU para antes (endRun)
+	 private void runCpu() {
+		 long dots = scheduler.nextEventTime() - masterClock;
+		 long budget = (dots + Globals.DOTS_PER_CPU_CYCLE - 1) / Globals.DOTS_PER_CPU_CYCLE;
+		 int cycles = cpu.run((int) Math.min(budget, Integer.MAX_VALUE));
+		 masterClock += (long) cycles * Globals.DOTS_PER_CPU_CYCLE;
+	 }
 
-    	    	while (cpu.getCurrentCycles() < scanlineCycles[scanlineCycleIndex]) {
-    	        	cyclesToUpdate = cpu.executeInstruction();
-    	        	cpu.totalCiclos+=cyclesToUpdate;
-        	        ppu.renderScanline(cyclesToUpdate*3 , scanline);
-        	        
-        	        // atualiza mapper (quando necessario) checar interrupcoes
-    	        	mapper.update(cyclesToUpdate, scanline);          
+	 private void handleEvent(int event) {
+		 switch(event) {
+		 	case Scheduler.EVENT_FRAME_END:
+		 		// a PPU para exatamente no fim do quadro; o proximo comeca na proxima sincronizacao
+		 		ppu.catchUp(scheduler.getLastEventTime());
+		 		apu.catchUp(masterClock);
+		 		frameComplete = true;
+		 		scheduler.schedule(Scheduler.EVENT_FRAME_END, scheduler.getLastEventTime() + FRAME_DOTS);
+		 		break;
+		 	case Scheduler.EVENT_VBLANK_NMI:
+		 		ppu.catchUp(scheduler.getLastEventTime());
+		 		ppu.startVBlank();
+		 		scheduler.schedule(Scheduler.EVENT_VBLANK_NMI, scheduler.getLastEventTime() + FRAME_DOTS);
+		 		break;
+		 	case Scheduler.EVENT_APU_FRAME:
+		 	case Scheduler.EVENT_DMC_FETCH:
+		 		apu.catchUp(masterClock);
+		 		apu.scheduleEvents();
+		 		break;
+		 	case Scheduler.EVENT_MAPPER_IRQ:
+		 		mapper.irqEvent();
+		 		break;
+		 	case Scheduler.EVENT_INTERRUPT_POLL:
+		 		if(mapper.getInterruptSignal() > 0)
+		 			cpu.handleInterrupts();
+		 		
+		 		// interrupcao ainda pendente (atrasada ou NMI em espera): verifica de novo apos a proxima instrucao
+		 		if(cpu.hasPendingInterrupt())
+		 			scheduler.schedule(Scheduler.EVENT_INTERRUPT_POLL, masterClock + 1);
+		 		break;
+		 }
+	 }
 
-    	    	}
-    	    	
-    	    	// produz 3 amostras de audio por linha
-    	        apu.audioUpdate(scanlineCycles[scanlineCycleIndex]);
-    	        cpu.updateCurrentCycles(-scanlineCycles[scanlineCycleIndex]);
-    			if((scanline > 7) && (scanline < 232))
-    				canvas.drawScanline(scanline);  	            
-    			scanline++;
-    	          if(++scanlineCycleIndex > 2)
-                  	scanlineCycleIndex = 0;
-    	    }
-    	    
-    	    // ao final envia as amostras de audio para a linha de saida
-    	    apu.audioPlayFrame();
-    	    
-    	    // renderiza as linhas calculadas na area de desenho (canvas)
-       	    jamicom.drawFrame();
-    		ppu.resetRenderBuffer();
-    	 }
-    }
+	 // pede uma verificacao de interrupcoes antes da proxima instrucao
+	 void requestInterruptPoll() {
+		 scheduler.schedule(Scheduler.EVENT_INTERRUPT_POLL, getMasterClock());
+		 cpu.endRun();
+	 }
+
+	 Scheduler getScheduler() {
+		 return scheduler;
+	 }
+
+	 // inicio da instrucao atual: durante Cpu.run o relogio so e somado ao fim, entao conta os ciclos ja executados
+	 long getMasterClock() {
+		 return masterClock + (long) cpu.getRunCycles() * Globals.DOTS_PER_CPU_CYCLE;
+	 }
     
 
 	public void updateCpuCycles(int ciclos) {
 		cpu.updateCurrentCycles(ciclos);
 	}
 	
-	public GamePad getgamepad() {
-		return this.gamepad;
+	int[] getSystemRam() {
+		return systemRam;
 	}
 		
 	public int systemRamRead(int addr) {
@@ -110,11 +133,12 @@ public class Console {
 	}
 	
 	public int getCurrentScanline() {
-		return scanline;
+		return ppu.getScanline();
 	}
 	
 	// VBlank = intervalo de reposicionamento do feixe de eletrons para inicio de novo quadro, usado para interrupcoes
 	 boolean isVBlankPeriod() {
+    	int scanline = ppu.getScanline();
     	if(scanline > 240 && scanline < 261)
     		return true;
     	else
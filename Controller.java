@@ -0,0 +1,53 @@
+/**
+ * Controller.java
+ * Define objeto do tipo Controller (portas dos controles)
+ * entrada pelas portas $4016 e $4017 por bits sinalizando  o status de cada botao (1 = pressionado, 0 = liberado)
+ * o estado dos botoes vem de uma InputSource (teclado, gravacao) e e atualizado a cada quadro
+ */
+
+package com.jamicom;
+
+class Controller {
+
+    private int p1Strobe;
+    private int p2Strobe;
+    private int readCounter;
+    private int buttonFlags;
+
+    static final int BUTTON_UP = 0x10;
+    static final int BUTTON_DOWN = 0x20;
+    static final int BUTTON_LEFT = 0x40;
+    static final int BUTTON_RIGHT = 0x80;
+    static final int BUTTON_A = 1;
+    static final int BUTTON_B = 2;
+    static final int BUTTON_SELECT = 4;
+    static final int BUTTON_START = 8;
+
+    void setButtons(int buttons) {
+    	buttonFlags = buttons & 0xff;
+    }
+
+    // le o status de cada botao sequencialmente e retorna 1 ou 0
+    public int reg4016Read() {
+        int temp =  ((buttonFlags >> readCounter) & 1) | 0x40;
+        readCounter++;
+        if (readCounter == 24)
+        	readCounter = 0;
+        return temp;
+    }
+
+    // ativa porta para leitura quando se escreve 1 seguido de 0
+    public void reg4016Write(int value) {
+    	if (((value & 1) == 0) && ( p1Strobe == 1))
+    		readCounter = 0;
+        p1Strobe = value & 1;
+    }
+
+    // ativa porta para leitura quando se escreve 1 seguido de 0
+    public void reg4017Write(int value) {
+    	if (((value & 1) == 0) && ( p2Strobe == 1))
+    		readCounter = 0;
+        p2Strobe = value & 1;
+    }
+
+}
@@ -9,6 +9,8 @@
 
 package com.jamicom;
 
+import java.lang.invoke.MethodHandles;
+
 class Cpu {
     private static final int CARRY_FLAG = 1;
     private static final int ZERO_FLAG = 2;
@@ -20,11 +22,29 @@ class Cpu {
     private static final int OVERFLOW_FLAG = 0x40;
     private static final int NEGATIVE_FLAG = 0x80;
 
+    // superinstrucoes: pares frequentes de instrucoes da PRG ROM executados numa so despachada
+    private static final int SUPER_DEX_BNE = 1;
+    private static final int SUPER_DEY_BNE = 2;
+    private static final int SUPER_LDA_IMM_STA_ZP = 3;
+    private static final int SUPER_LDA_IMM_STA_ABS = 4;
+    private static final int SUPER_LDA_ZP_STA_ZP = 5;
+    private static final int SUPER_LDA_ABS_STA_ABS = 6;
+    private static final int PAGE_MASK = (1 << Mapper.PAGE_SHIFT) - 1;
+
+    // flags N e Z de cada resultado de 8 bits, para materializar o registrador de status
+    private static final int[] NZ_FLAGS = new int[256];
+
+    static {
+    	for (int n = 0; n < 256; n++)
+    		NZ_FLAGS[n] = (n & NEGATIVE_FLAG) | (n == 0 ? ZERO_FLAG : 0);
+    }
+
     private int regX;
     private int regY;
     private int regA;
     public int regSP;
-    private int flagsRegister;
+    private int flagsRegister;		// C, I, D, B, bit 5 e V; os bits N e Z daqui sao ignorados
+    private int nzResult;			// ultimo resultado que define N e Z (bit 8 liga o N quando Z = 1, caso do BIT)
     private int currentCycles;
     int PC;
     private int currentOpcode;
@@ -37,13 +57,31 @@ class Cpu {
     private boolean suprimeNmi;
     int currentOpCycles;
     boolean updateInterruptCycles;
+    private int runBudget;			// ciclos pedidos ao laco de run(); zerado por endRun()
+    private int runCycles;			// ciclos ja executados por run() antes da instrucao atual
+
+    /* cache de instrucoes decodificadas da PRG ROM, indexada pela posicao na PRG (banco e deslocamento)
+     * cada entrada: opcode (bits 0-7), operando de 16 bits (8-23), ciclos (24-27) e superinstrucao (28-31); 0 = vazia
+     * como a ROM nao muda, as entradas valem para sempre; a troca de banco so invalida a pagina atual (codePage)
+     * codigo fora da PRG ROM (RAM, registradores) e instrucoes no fim de uma pagina seguem pelo ioRead
+     */
+    private int[] decodedPrg;
+    private int[] decodedRom;		// PRG ROM a que decodedPrg se refere
+    private int[] codeRom;			// PRG ROM vista na pagina de PC, null se a pagina nao for PRG ROM
+    private int codePage = -1;		// pagina de 1 KB de PC ja resolvida; -1 apos troca de banco
+    private int codeOffset;		// indice na PRG = codeOffset + endereco
+    private int operand;			// bytes seguintes ao opcode, quando vindos da cache
+    private boolean operandCached;
 
     private Mapper mapper;
+    private Recompiler recompiler;	// blocos quentes da PRG ROM em bytecode; null = so o interpretador
+    private boolean interpreterOnly;	// run() sem o caminho rapido (so os tratadores)
     
     public Cpu() {
     	opcodeCycles = new int[256];
         regSP = 0xff;
         flagsRegister = BREAK_FLAG;
+        nzResult = 1;
 
         // tabela de ciclos de CPU para calcular o numero de operacoes por quadro
         int ciclios[] = { 
@@ -77,6 +115,31 @@ class Cpu {
     
     public void setup(Mapper mapper) {
     	this.mapper = mapper;
+    	invalidateCodePage();
+    	if (recompiler != null)
+    		recompiler = new Recompiler(this, mapper, MethodHandles.lookup());
+    }
+
+    // liga ou desliga a recompilacao dos blocos quentes (vale a partir da proxima execucao de run())
+    void setRecompilerEnabled(boolean enabled) {
+    	recompiler = enabled ? new Recompiler(this, mapper, MethodHandles.lookup()) : null;
+    }
+
+    // desliga o caminho rapido de run(): toda instrucao passa pelo tratador (referencia do DifferentialGate)
+    void setInterpreterOnly(boolean enabled) {
+    	interpreterOnly = enabled;
+    }
+
+    boolean isRecompilerEnabled() {
+    	return recompiler != null;
+    }
+
+    int getCompiledBlocks() {
+    	return recompiler == null ? 0 : recompiler.getCompiledBlocks();
+    }
+
+    int getOpcodeCycles(int opcode) {
+    	return opcodeCycles[opcode];
     }
 
     void setSuprimeNmi(boolean valor) {
@@ -90,6 +153,8 @@ class Cpu {
     // modos de endereçamento
     int getValImmed() {
     	
+    	if (operandCached)
+    		return operand & 0xFF;
         return mapper.ioRead(PC + 1);
         
     }
@@ -112,10 +177,33 @@ class Cpu {
 
     
     int getAddr_Abs() {
+    	if (operandCached)
+    		return operand;
         return mapper.ioRead(PC + 1) | (mapper.ioRead(PC + 2) << 8);
     }
     
     // metodos para ligar/desligar os flags do registrador de status
+    // N e Z sao calculados sob demanda a partir de nzResult: so branches, PHP, BRK e interrupcoes os enxergam
+    int getFlags() {
+    	return (flagsRegister & ~(NEGATIVE_FLAG | ZERO_FLAG)) | NZ_FLAGS[nzResult & 0xFF] | (nzResult >> 1 & NEGATIVE_FLAG);
+    }
+
+    void setFlags(int elvalor) {
+    	flagsRegister = elvalor;
+    	if ((elvalor & ZERO_FLAG) != 0)
+    		nzResult = (elvalor & NEGATIVE_FLAG) << 1;
+    	else
+    		nzResult = (elvalor & NEGATIVE_FLAG) | 1;
+    }
+
+    boolean isNegative() {
+    	return (nzResult & 0x180) != 0;
+    }
+
+    boolean isZero() {
+    	return (nzResult & 0xFF) == 0;
+    }
+
     void turnOnFlags(int losflagsRegister) {
         flagsRegister |= losflagsRegister; 
     }
@@ -127,13 +215,11 @@ class Cpu {
         
     }
     
+    // C, I, D e V sao lidas direto de flagsRegister; so N e Z precisam montar o status a partir de nzResult
     boolean flagIsSet(int elFlago) {
-    	
-    	if((flagsRegister & elFlago) != 0)
-    		return true;
-    	else
-    		return false;
-    	
+    	if((elFlago & (NEGATIVE_FLAG | ZERO_FLAG)) != 0)
+    		return (getFlags() & elFlago) != 0;
+    	return (flagsRegister & elFlago) != 0;
     }
     
     // operacoes com a pilha
@@ -153,16 +239,7 @@ class Cpu {
     void setRegA(int elvalor) {
     	
         regA = elvalor;
-        
-        if ((regA & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (regA == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        nzResult = elvalor;
         
     }
     
@@ -170,16 +247,7 @@ class Cpu {
     void setRegY(int elvalor) {
     	
         regY = elvalor;
-        
-        if ((regY & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (regY == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        nzResult = elvalor;
         
     }
 
@@ -187,16 +255,7 @@ class Cpu {
     void setRegX(int elvalor) {
     	
         regX = elvalor;
-        
-        if ((regX & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (regX == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        nzResult = elvalor;
         
     }
 
@@ -224,16 +283,7 @@ class Cpu {
     void opOr(int elOperando) {
     	
         regA |= elOperando;
-        
-        if ((regA & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (regA == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        nzResult = regA;
         
     }
 
@@ -241,16 +291,7 @@ class Cpu {
     void opAnd(int elOperando) {
     	
         regA &= elOperando;
-        
-        if ((regA & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (regA == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        nzResult = regA;
         
     }
 
@@ -258,16 +299,7 @@ class Cpu {
     void opAndXY(int elReg, int elOffset) {		// El Illegal Opcode 9C op And Y con ((opcode+2)+1) y store en (Abs,X)
         
     	int temp = (mapper.ioRead(PC + 2)+1) & elReg;
-    	
-        if ((temp & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (temp == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        nzResult = temp;
         
         mapper.ioWrite((getAddr_Abs() + elOffset) & 0xffff, temp);
         
@@ -277,49 +309,29 @@ class Cpu {
     void opEor(int elOperando) {
     	
         regA ^= elOperando;
-        
-        if ((regA & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (regA == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        nzResult = regA;
         
     }
 
     
     void opBit(int elOperando) {
     	
-        turnOffFlags(NEGATIVE_FLAG | OVERFLOW_FLAG | ZERO_FLAG);
-        flagsRegister |= elOperando & 0xC0;
+        flagsRegister = (flagsRegister & ~OVERFLOW_FLAG) | (elOperando & OVERFLOW_FLAG);
         
+        // N vem do operando e Z do AND com A: com os dois ligados o N vai para o bit 8
         if ((regA & elOperando) == 0)
-            turnOnFlags(ZERO_FLAG);
+            nzResult = (elOperando & NEGATIVE_FLAG) << 1;
+        else
+            nzResult = (elOperando & NEGATIVE_FLAG) | 1;
         
     }
 
     
     int opAsl(int elOperando) {
     	
-        if ((elOperando & 0x80) == 0x80)
-            turnOnFlags(CARRY_FLAG);
-        else
-            turnOffFlags(CARRY_FLAG);
-        
+        flagsRegister = (flagsRegister & ~CARRY_FLAG) | (elOperando >> 7);
         elOperando = (elOperando << 1) & 0xFF;
-        
-        if ((elOperando & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (elOperando == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        nzResult = elOperando;
         
         return elOperando;
         
@@ -328,17 +340,11 @@ class Cpu {
     
     int opRol(int elOperando) {
     	
-        int tempor = (elOperando & 0x80) == 0x80 ? 1 : 0;
+        int tempor = elOperando >> 7;
         elOperando = ((elOperando << 1) & 0xFF) | (flagsRegister & CARRY_FLAG);
-        turnOffFlags(NEGATIVE_FLAG | ZERO_FLAG | CARRY_FLAG);
-        
-        if ((elOperando & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
+        flagsRegister = (flagsRegister & ~CARRY_FLAG) | tempor;
+        nzResult = elOperando;
         
-        if (elOperando == 0)
-            turnOnFlags(ZERO_FLAG);
-        
-        flagsRegister |= tempor;
         return elOperando;
         
     }
@@ -346,17 +352,11 @@ class Cpu {
     
     int opRor(int elOperando) {
     	
-        int tempor = (elOperando & 1) == 1 ? 1 : 0;
+        int tempor = elOperando & 1;
         elOperando = (elOperando >> 1) | ((flagsRegister & CARRY_FLAG) << 7);
-        turnOffFlags(NEGATIVE_FLAG | ZERO_FLAG | CARRY_FLAG);
-        
-        if ((elOperando & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
+        flagsRegister = (flagsRegister & ~CARRY_FLAG) | tempor;
+        nzResult = elOperando;
         
-        if (elOperando == 0)
-            turnOnFlags(ZERO_FLAG);
-        
-        flagsRegister |= tempor;
         return elOperando;
         
     }
@@ -364,67 +364,30 @@ class Cpu {
     
     void opCmp(int elvalor) {
     	
+        // C = registrador >= valor (diferenca nao negativa)
         int laDiferencia = regA - elvalor;
-        
-        if (regA >= elvalor)
-            turnOnFlags(CARRY_FLAG);
-        else
-            turnOffFlags(CARRY_FLAG);
-        
-        if ((laDiferencia & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (laDiferencia == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        flagsRegister = (flagsRegister & ~CARRY_FLAG) | ((laDiferencia >>> 31) ^ 1);
+        nzResult = laDiferencia & 0xFF;
         
     }
 
     
     void opCpx(int elvalor) {
     	
+        // C = registrador >= valor (diferenca nao negativa)
         int laDiferencia = regX - elvalor;
-        
-        if (regX >= elvalor)
-            turnOnFlags(CARRY_FLAG);
-        else
-            turnOffFlags(CARRY_FLAG);
-        
-        if ((laDiferencia & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (laDiferencia == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        flagsRegister = (flagsRegister & ~CARRY_FLAG) | ((laDiferencia >>> 31) ^ 1);
+        nzResult = laDiferencia & 0xFF;
         
     }
 
     
     void opCpy(int elvalor) {
     	
+        // C = registrador >= valor (diferenca nao negativa)
         int laDiferencia = regY - elvalor;
-        
-        if (regY >= elvalor)
-            turnOnFlags(CARRY_FLAG);
-        else
-            turnOffFlags(CARRY_FLAG);
-        
-        if ((laDiferencia & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (laDiferencia == 0) {
-            turnOnFlags(ZERO_FLAG);
-        }
-        else
-            turnOffFlags(ZERO_FLAG);
+        flagsRegister = (flagsRegister & ~CARRY_FLAG) | ((laDiferencia >>> 31) ^ 1);
+        nzResult = laDiferencia & 0xFF;
         
     }
 
@@ -432,21 +395,13 @@ class Cpu {
     void opAdc(int elOperando) {
 
         int tempor = elOperando + regA + (flagsRegister & CARRY_FLAG);
-        turnOffFlags(NEGATIVE_FLAG | OVERFLOW_FLAG | ZERO_FLAG | CARRY_FLAG);
-        
-        if ((((regA ^ elOperando) & 0x80) == 0) && (((regA ^ tempor) & 0x80) != 0))
-            turnOnFlags(OVERFLOW_FLAG);
-        
-        if ((tempor & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
         
-        if ((tempor & 0xFF) == 0)
-            turnOnFlags(ZERO_FLAG);
-        
-        if (tempor > 0xFF)
-            turnOnFlags(CARRY_FLAG);
+        // V: operandos de mesmo sinal e resultado de sinal diferente; C: vai-um no bit 8
+        flagsRegister = (flagsRegister & ~(OVERFLOW_FLAG | CARRY_FLAG))
+        		| (((regA ^ tempor) & (elOperando ^ tempor) & 0x80) >> 1) | (tempor >> 8);
         
         regA = tempor & 0xFF;
+        nzResult = regA;
         
     }
 
@@ -462,16 +417,7 @@ class Cpu {
     int opIncDec(int elOperando, int elSinal) {
     	
         elOperando = (elOperando + elSinal) & 0xff;
-        
-        if ((elOperando & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (elOperando == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        nzResult = elOperando;
         
         return elOperando;
         
@@ -480,22 +426,9 @@ class Cpu {
     
     int opLsr(int elOperando) {
     	
-        if ((elOperando & 1) == 1)
-            turnOnFlags(CARRY_FLAG);
-        else
-            turnOffFlags(CARRY_FLAG);
-        
+        flagsRegister = (flagsRegister & ~CARRY_FLAG) | (elOperando & 1);
         elOperando >>= 1;
-        
-        if ((elOperando & 0x80) == 0x80)
-            turnOnFlags(NEGATIVE_FLAG);
-        else
-            turnOffFlags(NEGATIVE_FLAG);
-        
-        if (elOperando == 0)
-            turnOnFlags(ZERO_FLAG);
-        else
-            turnOffFlags(ZERO_FLAG);
+        nzResult = elOperando;
         
         return elOperando;
         
@@ -555,7 +488,7 @@ class Cpu {
     
     void opRti() {
     	
-        flagsRegister = pullByte(0) & 0xef;
+        setFlags(pullByte(0) & 0xef);
         PC = pullByte(0) | (pullByte(0) << 8);
         
     }
@@ -579,7 +512,7 @@ class Cpu {
            }    	   
            else {
 	           mapper.clearInterruptSignal(Globals.INTERRUPT_NMI);
-	    	   opInterrupt(PC, mapper.getNmiAddr(), (flagsRegister & 0xef) | BIT_5);
+	    	   opInterrupt(PC, mapper.getNmiAddr(), (getFlags() & 0xef) | BIT_5);
 	       }
        }
        
@@ -593,17 +526,17 @@ class Cpu {
     		   if((mapper.getInterruptSignal() & 1) == Globals.INTERRUPT_FRAME_IRQ) {
 
     			   mapper.clearInterruptSignal(Globals.INTERRUPT_FRAME_IRQ);    			   
-    			   opInterrupt(PC, mapper.getIrqAddr(), (flagsRegister & 0xef) | BIT_5);
+    			   opInterrupt(PC, mapper.getIrqAddr(), (getFlags() & 0xef) | BIT_5);
     			   return;
     		   }
     		   else if((mapper.getInterruptSignal() & 2) == Globals.INTERRUPT_DMC_IRQ) {
     			   mapper.clearInterruptSignal(Globals.INTERRUPT_DMC_IRQ);
-    			   opInterrupt(PC, mapper.getIrqAddr(), (flagsRegister & 0xef) | BIT_5);
+    			   opInterrupt(PC, mapper.getIrqAddr(), (getFlags() & 0xef) | BIT_5);
     			   return;
     		   }
     		   else if((mapper.getInterruptSignal() & 4) == Globals.INTERRUPT_MAPPER_IRQ) {
     			   mapper.clearInterruptSignal(Globals.INTERRUPT_MAPPER_IRQ);
-    			   opInterrupt(PC, mapper.getIrqAddr(), (flagsRegister & 0xef) | BIT_5);
+    			   opInterrupt(PC, mapper.getIrqAddr(), (getFlags() & 0xef) | BIT_5);
     			   return;
     		   }
     		   
@@ -611,212 +544,613 @@ class Cpu {
        }
     }
     
+    // indica se ainda ha trabalho para handleInterrupts (NMI pendente ou IRQ com atraso/nao mascarado)
+    boolean hasPendingInterrupt() {
+    	if((mapper.getInterruptSignal() & Globals.INTERRUPT_NMI) != 0)
+    		return true;
+    	return mapper.irqIsRequested() && (mapper.getIrqDelayFlag() || !flagIsSet(INTERRUPT_FLAG));
+    }
+    
+    /* executa instrucoes ate consumir cycleBudget ciclos e devolve os ciclos executados (pode passar um pouco)
+     * A, X, Y, PC, o status e a contagem de ciclos ficam em variaveis locais durante o laco, para o JIT mante-los
+     * em registradores da maquina; as instrucoes mais comuns da PRG ROM que so usam a CPU e a RAM interna
+     * (cargas e armazenamentos em imediato, pagina zero e absoluto, tambem indexado, na RAM; ALU, BIT, INC/DEC,
+     * deslocamentos, transferencias, flags, desvios e JMP) sao executadas aqui mesmo, a partir da cache de decodificacao
+     * as demais (I/O com a PPU e a APU, pilha, interrupcoes, modos indiretos, codigo fora da PRG ROM) gravam
+     * os registradores nos campos, publicam runCycles para o relogio do console (getMasterClock) e passam pelo
+     * tratador em executeInstruction; o laco termina antes se a agenda ganhar um evento mais proximo (endRun)
+     * as interrupcoes continuam sendo tratadas pelo console entre as execucoes
+     */
+    int run(int cycleBudget) {
+    	int[] ram = mapper.getReadPage(0);
+    	int ramBase = mapper.getReadPageOffset(0);
+    	int ramEnd = directRamEnd(ram, ramBase);
+    	if (recompiler != null || interpreterOnly || ramEnd == 0)
+    		return runInstructions(cycleBudget);
+
+    	int cycles = 0;
+    	runBudget = cycleBudget;
+    	// interrupcao recem aceita (opInterrupt): a primeira instrucao do tratador passa por executeInstruction,
+    	// que soma os 7 ciclos da interrupcao ao fim dela, como no interpretador
+    	if (updateInterruptCycles) {
+    		runCycles = 0;
+    		cycles = executeInstruction();
+    	}
+
+    	int a = regA;
+    	int x = regX;
+    	int y = regY;
+    	int pc = PC;
+    	int nz = nzResult;
+    	int flags = flagsRegister;
+    	int[] decoded = decodedPrg;
+    	int page = codeRom != null ? codePage : -1;
+    	int offset = codeOffset;
+    	while (cycles < runBudget) {
+    		int entry = 0;
+    		if ((pc >> Mapper.PAGE_SHIFT) == page && (pc & PAGE_MASK) <= PAGE_MASK - 2)
+    			entry = decoded[offset + pc];
+    		int value = (entry >> 8) & 0xFF;
+    		int addr = (entry >> 8) & 0xFFFF;
+    		fast: {
+    			switch (entry & 0xFF) {		// entrada vazia (0) cai no BRK, que vai ao tratador
+    				case 0xA9: a = value; nz = a; pc += 2; break;						// LDA #
+    				case 0xA2: x = value; nz = x; pc += 2; break;						// LDX #
+    				case 0xA0: y = value; nz = y; pc += 2; break;						// LDY #
+    				case 0xA5: a = ram[ramBase + value]; nz = a; pc += 2; break;		// LDA zp
+    				case 0xA6: x = ram[ramBase + value]; nz = x; pc += 2; break;		// LDX zp
+    				case 0xA4: y = ram[ramBase + value]; nz = y; pc += 2; break;		// LDY zp
+    				case 0xB5: a = ram[ramBase + ((value + x) & 0xFF)]; nz = a; pc += 2; break;	// LDA zp,X
+    				case 0xB4: y = ram[ramBase + ((value + x) & 0xFF)]; nz = y; pc += 2; break;	// LDY zp,X
+    				case 0xB6: x = ram[ramBase + ((value + y) & 0xFF)]; nz = x; pc += 2; break;	// LDX zp,Y
+    				case 0x85: ram[ramBase + value] = a; pc += 2; break;				// STA zp
+    				case 0x86: ram[ramBase + value] = x; pc += 2; break;				// STX zp
+    				case 0x84: ram[ramBase + value] = y; pc += 2; break;				// STY zp
+    				case 0x95: ram[ramBase + ((value + x) & 0xFF)] = a; pc += 2; break;	// STA zp,X
+    				case 0x94: ram[ramBase + ((value + x) & 0xFF)] = y; pc += 2; break;	// STY zp,X
+    				case 0x96: ram[ramBase + ((value + y) & 0xFF)] = x; pc += 2; break;	// STX zp,Y
+    				case 0xAD:		// LDA abs
+    					if (addr >= ramEnd)
+    						break fast;
+    					a = ram[ramBase + addr]; nz = a; pc += 3; break;
+    				case 0x8D:		// STA abs
+    					if (addr >= ramEnd)
+    						break fast;
+    					ram[ramBase + addr] = a; pc += 3; break;
+    				case 0xBD:		// LDA abs,X
+    				case 0xB9: {	// LDA abs,Y
+    					int indexed = addr + ((entry & 0x04) != 0 ? x : y);
+    					if (indexed >= ramEnd)
+    						break fast;
+    					cycles += ((addr ^ indexed) >> 8) & 1;		// cruzamento de pagina
+    					a = ram[ramBase + indexed]; nz = a; pc += 3; break;
+    				}
+    				case 0x9D:		// STA abs,X
+    				case 0x99: {	// STA abs,Y
+    					int indexed = addr + ((entry & 0x04) != 0 ? x : y);
+    					if (indexed >= ramEnd)
+    						break fast;
+    					ram[ramBase + indexed] = a; pc += 3; break;
+    				}
+    				case 0xE6:		// INC zp
+    				case 0xC6:		// DEC zp
+    					nz = (ram[ramBase + value] + ((entry & 0xFF) == 0xE6 ? 1 : -1)) & 0xFF;
+    					ram[ramBase + value] = nz; pc += 2; break;
+    				case 0xE8: x = (x + 1) & 0xFF; nz = x; pc++; break;				// INX
+    				case 0xC8: y = (y + 1) & 0xFF; nz = y; pc++; break;				// INY
+    				case 0xCA: x = (x - 1) & 0xFF; nz = x; pc++; break;				// DEX
+    				case 0x88: y = (y - 1) & 0xFF; nz = y; pc++; break;				// DEY
+    				case 0xAA: x = a; nz = x; pc++; break;								// TAX
+    				case 0xA8: y = a; nz = y; pc++; break;								// TAY
+    				case 0x8A: a = x; nz = a; pc++; break;								// TXA
+    				case 0x98: a = y; nz = a; pc++; break;								// TYA
+    				case 0x18: flags &= ~CARRY_FLAG; pc++; break;						// CLC
+    				case 0x38: flags |= CARRY_FLAG; pc++; break;						// SEC
+    				case 0xEA: pc++; break;												// NOP
+    				case 0x29: a &= value; nz = a; pc += 2; break;						// AND #
+    				case 0x09: a |= value; nz = a; pc += 2; break;						// ORA #
+    				case 0x49: a ^= value; nz = a; pc += 2; break;						// EOR #
+    				case 0x25: a &= ram[ramBase + value]; nz = a; pc += 2; break;		// AND zp
+    				case 0x05: a |= ram[ramBase + value]; nz = a; pc += 2; break;		// ORA zp
+    				case 0x45: a ^= ram[ramBase + value]; nz = a; pc += 2; break;		// EOR zp
+    				case 0x24:		// BIT zp
+    					value = ram[ramBase + value];
+    					flags = (flags & ~OVERFLOW_FLAG) | (value & OVERFLOW_FLAG);
+    					nz = (a & value) == 0 ? (value & NEGATIVE_FLAG) << 1 : (value & NEGATIVE_FLAG) | 1;
+    					pc += 2; break;
+    				case 0x69: case 0x65:		// ADC #, zp
+    				case 0xE9: case 0xE5: {		// SBC #, zp (ADC do complemento)
+    					if ((entry & 0x04) != 0)		// pagina zero ($65, $E5)
+    						value = ram[ramBase + value];
+    					if ((entry & 0x80) != 0)		// SBC ($E5, $E9)
+    						value = ~value & 0xFF;
+    					int sum = value + a + (flags & CARRY_FLAG);
+    					flags = (flags & ~(OVERFLOW_FLAG | CARRY_FLAG)) | (((a ^ sum) & (value ^ sum) & 0x80) >> 1) | (sum >> 8);
+    					a = sum & 0xFF; nz = a; pc += 2; break;
+    				}
+    				case 0xC9: case 0xC5:		// CMP #, zp
+    				case 0xE0: case 0xE4:		// CPX #, zp
+    				case 0xC0: case 0xC4: {		// CPY #, zp
+    					if ((entry & 0x04) != 0)		// pagina zero ($C5, $E4, $C4)
+    						value = ram[ramBase + value];
+    					// bit 0 ligado: CMP; senao o bit 5 separa CPX ($E0, $E4) de CPY ($C0, $C4)
+    					int diff = ((entry & 0x01) != 0 ? a : ((entry & 0x20) != 0 ? x : y)) - value;
+    					flags = (flags & ~CARRY_FLAG) | ((diff >>> 31) ^ 1);
+    					nz = diff & 0xFF; pc += 2; break;
+    				}
+    				case 0x0A: case 0x2A: case 0x4A: case 0x6A: {		// ASL, ROL, LSR, ROR A
+    					int shifted = shift(entry & 0xFF, a, flags & CARRY_FLAG);
+    					flags = (flags & ~CARRY_FLAG) | (shifted >> 8);
+    					a = shifted & 0xFF; nz = a; pc++; break;
+    				}
+    				case 0x06: case 0x26: case 0x46: case 0x66: {		// ASL, ROL, LSR, ROR zp
+    					int shifted = shift(entry & 0xFF, ram[ramBase + value], flags & CARRY_FLAG);
+    					flags = (flags & ~CARRY_FLAG) | (shifted >> 8);
+    					nz = shifted & 0xFF;
+    					ram[ramBase + value] = nz; pc += 2; break;
+    				}
+    				case 0x10: case 0x30: case 0x50: case 0x70:		// BPL, BMI, BVC, BVS
+    				case 0x90: case 0xB0: case 0xD0: case 0xF0:		// BCC, BCS, BNE, BEQ
+    					if (branchTaken(entry & 0xFF, nz, flags)) {
+    						int target = (pc + 2 + (byte) value) & 0xFFFF;
+    						cycles += ((pc ^ target) & 0x100) != 0 ? 2 : 1;
+    						pc = target;
+    					}
+    					else
+    						pc += 2;
+    					break;
+    				case 0x4C: pc = addr; break;										// JMP abs
+    				default:
+    					break fast;
+    			}
+    			cycles += (entry >> 24) & 0xF;
+    			continue;
+    		}
+
+    		// demais instrucoes: pelo tratador, com os registradores nos campos
+    		regA = a;
+    		regX = x;
+    		regY = y;
+    		PC = pc;
+    		nzResult = nz;
+    		flagsRegister = flags;
+    		runCycles = cycles;
+    		cycles += executeInstruction();
+    		a = regA;
+    		x = regX;
+    		y = regY;
+    		pc = PC;
+    		nz = nzResult;
+    		flags = flagsRegister;
+    		decoded = decodedPrg;
+    		page = codeRom != null ? codePage : -1;
+    		offset = codeOffset;
+    	}
+    	regA = a;
+    	regX = x;
+    	regY = y;
+    	PC = pc;
+    	nzResult = nz;
+    	flagsRegister = flags;
+    	runCycles = 0;
+    	runBudget = 0;
+    	totalCiclos += cycles;
+    	return cycles;
+    }
+
+    /* run() instrucao a instrucao pelos tratadores, com os registradores nos campos; usado com o recompilador
+     * ligado (um bloco gerado substitui as instrucoes que o interpretador executaria) e sem RAM direta
+     */
+    private int runInstructions(int cycleBudget) {
+    	int cycles = 0;
+    	runBudget = cycleBudget;
+    	while (cycles < runBudget) {
+    		runCycles = cycles;
+    		// com uma interrupcao recem aceita a instrucao vai ao tratador, que soma os 7 ciclos dela
+    		if (recompiler != null && !updateInterruptCycles) {
+    			int blockCycles = recompiler.execute(runBudget - cycles);
+    			if (blockCycles > 0) {
+    				cycles += blockCycles;
+    				continue;
+    			}
+    		}
+    		cycles += executeInstruction();
+    	}
+    	runCycles = 0;
+    	runBudget = 0;
+    	totalCiclos += cycles;
+    	return cycles;
+    }
+
+    // fim da faixa a partir de $0000 lida e escrita direto na RAM (mesmo array e deslocamento); 0 se nenhuma
+    private int directRamEnd(int[] ram, int ramBase) {
+    	int addr = 0;
+    	while (addr < 0x2000 && ram != null && mapper.getReadPage(addr) == ram && mapper.getWritePage(addr) == ram
+    			&& mapper.getReadPageOffset(addr) == ramBase && mapper.getWritePageOffset(addr) == ramBase)
+    		addr += Globals.BANK_1K;
+    	return addr;
+    }
+
+    /* ASL, ROL, LSR e ROR pelos bits 6-5 do opcode, com o carry de entrada (0 ou 1)
+     * devolve o resultado de 8 bits com o carry de saida no bit 8
+     */
+    private static int shift(int opcode, int value, int carry) {
+    	switch (opcode & 0x60) {
+    		case 0x00:
+    			return value << 1;
+    		case 0x20:
+    			return (value << 1) | carry;
+    		case 0x40:
+    			return (value >> 1) | ((value & 1) << 8);
+    		default:
+    			return (value >> 1) | (carry << 7) | ((value & 1) << 8);
+    	}
+    }
+
+    /* condicao dos desvios pelo opcode: bits 7-6 escolhem a flag (N, V, C, Z) e o bit 5 o valor esperado
+     * N e Z vem do ultimo resultado (nz), C e V do registrador de status
+     */
+    private static boolean branchTaken(int opcode, int nz, int flags) {
+    	boolean set;
+    	switch (opcode >> 6) {
+    		case 0:
+    			set = (nz & 0x180) != 0;
+    			break;
+    		case 1:
+    			set = (flags & OVERFLOW_FLAG) != 0;
+    			break;
+    		case 2:
+    			set = (flags & CARRY_FLAG) != 0;
+    			break;
+    		default:
+    			set = (nz & 0xFF) == 0;
+    			break;
+    	}
+    	return set == ((opcode & 0x20) != 0);
+    }
+
+    // encerra run() ao fim da instrucao atual (evento agendado para antes do fim do orcamento)
+    void endRun() {
+    	runBudget = 0;
+    }
+
+    int getRunCycles() {
+    	return runCycles;
+    }
+
+    // a pagina de PC foi remapeada (troca de banco): a proxima busca consulta o mapper de novo
+    void invalidateCodePage() {
+    	codePage = -1;
+    }
+
+    // resolve a pagina de PC: PRG ROM (usa a cache de instrucoes decodificadas) ou outra memoria
+    private void mapCodePage(int pc) {
+    	codePage = pc >> Mapper.PAGE_SHIFT;
+    	codeRom = mapper.getPrgRomPage(pc);
+    	if (codeRom == null)
+    		return;
+    	codeOffset = mapper.getReadPageOffset(pc);
+    	if (codeRom != decodedRom) {		// cartucho novo
+    		decodedRom = codeRom;
+    		decodedPrg = new int[codeRom.length];
+    	}
+    }
+
+    /* carrega opcode, ciclos e operandos da instrucao em PC; devolve a superinstrucao que comeca nela (0 = nenhuma)
+     * na PRG ROM vem da cache (decodificando na primeira vez); no resto os operandos sao lidos sob demanda pelo ioRead
+     */
+    private int fetchInstruction() {
+    	int pc = PC & 0xFFFF;
+    	if ((pc >> Mapper.PAGE_SHIFT) != codePage)
+    		mapCodePage(pc);
+    	if (codeRom != null && (pc & PAGE_MASK) <= PAGE_MASK - 2) {
+    		int entry = decodedPrg[codeOffset + pc];
+    		if (entry == 0)
+    			entry = decode(pc);
+    		currentOpcode = entry & 0xFF;
+    		operand = (entry >> 8) & 0xFFFF;
+    		currentOpCycles = (entry >> 24) & 0xF;
+    		operandCached = true;
+    		return entry >>> 28;
+    	}
+    	currentOpcode = mapper.ioRead(PC);
+    	currentOpCycles = opcodeCycles[currentOpcode];
+    	operandCached = false;
+    	return 0;
+    }
+
+    // decodifica a instrucao em pc (pagina atual da PRG ROM, com os 3 bytes dentro da pagina)
+    private int decode(int pc) {
+    	int index = codeOffset + pc;
+    	int opcode = codeRom[index];
+    	int entry = opcode | (codeRom[index + 1] << 8) | (codeRom[index + 2] << 16) | (opcodeCycles[opcode] << 24)
+    			| (findSuperinstruction(pc, opcode) << 28);
+    	decodedPrg[index] = entry;
+    	return entry;
+    }
+
+    // o par so e fundido se a segunda instrucao tambem estiver inteira na mesma pagina
+    private int findSuperinstruction(int pc, int opcode) {
+    	int kind;
+    	int length;
+    	int second;
+    	int second2 = -1;
+    	switch (opcode) {
+    		case 0xCA:		// DEX; BNE
+    			kind = SUPER_DEX_BNE;
+    			length = 1;
+    			second = 0xD0;
+    			break;
+    		case 0x88:		// DEY; BNE
+    			kind = SUPER_DEY_BNE;
+    			length = 1;
+    			second = 0xD0;
+    			break;
+    		case 0xA9:		// LDA #; STA zp / STA abs
+    			kind = SUPER_LDA_IMM_STA_ZP;
+    			length = 2;
+    			second = 0x85;
+    			second2 = 0x8D;
+    			break;
+    		case 0xA5:		// LDA zp; STA zp
+    			kind = SUPER_LDA_ZP_STA_ZP;
+    			length = 2;
+    			second = 0x85;
+    			break;
+    		case 0xAD:		// LDA abs; STA abs
+    			kind = SUPER_LDA_ABS_STA_ABS;
+    			length = 3;
+    			second = 0x8D;
+    			break;
+    		default:
+    			return 0;
+    	}
+    	if ((pc & PAGE_MASK) + length > PAGE_MASK - 2)
+    		return 0;
+    	int next = codeRom[codeOffset + pc + length];
+    	if (next == second)
+    		return kind;
+    	if (next == second2)
+    		return SUPER_LDA_IMM_STA_ABS;
+    	return 0;
+    }
+
+    /* executa a primeira instrucao do par e, se run() executaria a seguinte logo depois (orcamento nao esgotado
+     * e sem endRun), a segunda na mesma chamada; a ordem dos acessos e os ciclos sao os mesmos de duas chamadas
+     */
+    private void executeSuperinstruction(int kind) {
+    	switch (kind) {
+    		case SUPER_DEX_BNE:
+    			dex();
+    			if (fetchSecond())
+    				bne();
+    			break;
+    		case SUPER_DEY_BNE:
+    			dey();
+    			if (fetchSecond())
+    				bne();
+    			break;
+    		case SUPER_LDA_IMM_STA_ZP:
+    			ldaImm();
+    			if (fetchSecond())
+    				staZp();
+    			break;
+    		case SUPER_LDA_IMM_STA_ABS:
+    			ldaImm();
+    			if (fetchSecond())
+    				staAbs();
+    			break;
+    		case SUPER_LDA_ZP_STA_ZP:
+    			ldaZp();
+    			if (fetchSecond())
+    				staZp();
+    			break;
+    		case SUPER_LDA_ABS_STA_ABS:
+    			ldaAbs();
+    			if (fetchSecond())
+    				staAbs();
+    			break;
+    	}
+    }
+
+    // avanca o relogio de run() ate a segunda instrucao do par e carrega-a da cache
+    private boolean fetchSecond() {
+    	if (runCycles + currentCycles >= runBudget)
+    		return false;
+    	runCycles += currentCycles;
+    	int pc = PC & 0xFFFF;
+    	int entry = decodedPrg[codeOffset + pc];
+    	if (entry == 0)
+    		entry = decode(pc);
+    	currentOpcode = entry & 0xFF;
+    	operand = (entry >> 8) & 0xFFFF;
+    	currentOpCycles = (entry >> 24) & 0xF;
+    	currentCycles += currentOpCycles;
+    	return true;
+    }
+
     // loop principal - executa um opcode
+    // as interrupcoes sao verificadas pelo console somente quando agendadas (Scheduler.EVENT_INTERRUPT_POLL)
     int executeInstruction() {
-    	
-    	// checa se sinalizacao de interrupcao
-    	if ((mapper.getInterruptSignal() > 0)) {
-    		handleInterrupts();
-    	}
 
     	// carrega o codigo operacional e efetua a respectiva operacao
-        currentOpcode = mapper.ioRead(PC);
-        deltaCycles = currentCycles;
-        currentOpCycles = opcodeCycles[currentOpcode];
+        int superinstruction = fetchInstruction();
+        currentCycles = 0;
+        deltaCycles = 0;
         currentCycles += currentOpCycles;
+        if (superinstruction != 0)
+        	executeSuperinstruction(superinstruction);
+        else
         switch (currentOpcode) {
-        	case 0x00: { opInterrupt((PC + 2) & 0xFFFF, mapper.getIrqAddr(), flagsRegister | BREAK_FLAG | BIT_5); break; }
-            case 0x01: { opOr(mapper.ioRead(getAddr_Idx_Ind())); PC += 2; break; }
-            case 0x04: { PC += 2; break; }
-
-            case 0x05: { opOr(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0x06: { mapper.ioWrite(getValImmed(), opAsl(mapper.ioRead(getValImmed()))); PC += 2; break; }
-
-            case 0x08: { pushByte(flagsRegister | BREAK_FLAG | 0x20); PC++; break; }
-            case 0x09: { opOr(getValImmed()); PC += 2; break; }
-            case 0x0A: { setRegA(opAsl(regA)); PC++; break; }
-
-            case 0x0D: { opOr(mapper.ioRead(getAddr_Abs())); PC += 3; break; }
-            case 0x0E: { mapper.ioWrite(getAddr_Abs(), opAsl(mapper.ioRead(getAddr_Abs()))); PC += 3; break; }
-            case 0x10: { opBranch(!flagIsSet(NEGATIVE_FLAG)); break; }
-            case 0x11: { checkBugIndIdx(); opOr(mapper.ioRead(getAddr_Ind_Idx())); PC += 2; break; }
-
-            case 0x15: { opOr(mapper.ioRead((getValImmed() + regX) & 0xFF)); PC += 2; break; }
-            case 0x16: { mapper.ioWrite((getValImmed() + regX) & 0xff, opAsl(mapper.ioRead((getValImmed() + regX) & 0xff))); PC += 2; break; }
-
-            case 0x18: { turnOffFlags(CARRY_FLAG); PC++; break; }
-            case 0x19: { checkBugAbsInd(regY); opOr(mapper.ioRead((getAddr_Abs() + regY) & 0xffff)); PC += 3; break; }
-            case 0x1A: { PC++; break; }
-
-            case 0x1D: { checkBugAbsInd(regX); opOr(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)); PC += 3; break; }
-            case 0x1E: { mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opAsl(mapper.ioRead((getAddr_Abs() + regX) & 0xffff))); PC += 3; break; }
-
-            case 0x20: { opJsr(); break; }
-            case 0x21: { opAnd(mapper.ioRead(getAddr_Idx_Ind())); PC += 2; break; }
-
-            case 0x24: { opBit(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0x25: { opAnd(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0x26: { mapper.ioWrite(getValImmed(), opRol(mapper.ioRead(getValImmed()))); PC += 2;  break; }
-            case 0x28: { flagsRegister = pullByte(1) & 0xef; mapper.setIrqDelayFlag(true); break; }
-            case 0x29: { opAnd(getValImmed()); PC += 2; break; }
-            case 0x2A: { setRegA(opRol(regA)); PC++; break; }
-            case 0x2C: { opBit(mapper.ioRead(getAddr_Abs())); PC += 3; break; }
-            case 0x2D: { opAnd(mapper.ioRead(getAddr_Abs())); PC += 3; break; }
-            case 0x2E: { mapper.ioWrite(getAddr_Abs(), opRol(mapper.ioRead(getAddr_Abs()))); PC += 3; break; }
- 
-            case 0x30: { opBranch(flagIsSet(NEGATIVE_FLAG)); break; }
-            case 0x31: { checkBugIndIdx(); opAnd(mapper.ioRead(getAddr_Ind_Idx())); PC += 2; break; }
-            case 0x35: { opAnd(mapper.ioRead((getValImmed() + regX) & 0xFF)); PC += 2; break; }
-            case 0x36: { mapper.ioWrite((getValImmed() + regX) & 0xff, opRol(mapper.ioRead((getValImmed() + regX) & 0xff))); PC += 2; break; }
-            case 0x38: { turnOnFlags(CARRY_FLAG); PC++; break; }
-            case 0x39: { checkBugAbsInd(regY); opAnd(mapper.ioRead((getAddr_Abs() + regY) & 0xffff)); PC += 3; break; }
-            case 0x3D: { checkBugAbsInd(regX); opAnd(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)); PC += 3; break; }
-            case 0x3E: { mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opRol(mapper.ioRead((getAddr_Abs() + regX) & 0xffff))); PC += 3; break; }
-            case 0x40: { opRti(); break; }
-            case 0x41: { opEor(mapper.ioRead(getAddr_Idx_Ind())); PC += 2; break; }
-            case 0x45: { opEor(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0x46: { mapper.ioWrite(getValImmed(), opLsr(mapper.ioRead(getValImmed()))); PC += 2;  break; }
-            case 0x48: { pushByte(regA); PC++; break; }
-            case 0x49: { opEor(getValImmed()); PC += 2; break; }
-            case 0x4A: { setRegA(opLsr(regA)); PC++; break; }
-            case 0x4C: { PC = getAddr_Abs(); break; }
-            case 0x4D: { opEor(mapper.ioRead(getAddr_Abs())); PC += 3; break; }
-            case 0x4E: { mapper.ioWrite(getAddr_Abs(), opLsr(mapper.ioRead(getAddr_Abs()))); PC += 3; break; }
-            case 0x50: { opBranch(!flagIsSet(OVERFLOW_FLAG)); break; }
-            case 0x51: { checkBugIndIdx(); opEor(mapper.ioRead(getAddr_Ind_Idx())); PC += 2; break; }
-            case 0x55: { opEor(mapper.ioRead((getValImmed() + regX) & 0xFF)); PC += 2; break; }
-            case 0x56: { mapper.ioWrite((getValImmed() + regX) & 0xff, opLsr(mapper.ioRead((getValImmed() + regX) & 0xff))); PC += 2; break; }
-            case 0x58: { turnOffFlags(INTERRUPT_FLAG); mapper.setIrqDelayFlag(true); PC++; break; }
-            case 0x59: { checkBugAbsInd(regY); opEor(mapper.ioRead((getAddr_Abs() + regY) & 0xffff)); PC += 3; break; }
-            case 0x5A: { PC++; break; }
-
-            case 0x5D: { checkBugAbsInd(regX); opEor(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)); PC += 3; break; }
-            case 0x5E: { mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opLsr(mapper.ioRead((getAddr_Abs() + regX) & 0xffff))); PC += 3; break; }
-            case 0x60: { opRts(); break; }
-            case 0x61: { opAdc(mapper.ioRead(getAddr_Idx_Ind())); PC += 2; break; }
-            case 0x65: { opAdc(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0x66: { mapper.ioWrite(getValImmed(), opRor(mapper.ioRead(getValImmed()))); PC += 2;  break; }
-            case 0x68: { setRegA(pullByte(1)); break; }
-            case 0x69: { opAdc(getValImmed()); PC += 2; break; }
-            case 0x6A: { setRegA(opRor(regA)); PC++; break; }
-            case 0x6C: { opJmpInd(); break; }
-            case 0x6D: { opAdc(mapper.ioRead(getAddr_Abs())); PC += 3; break; }
-            case 0x6E: { mapper.ioWrite(getAddr_Abs(), opRor(mapper.ioRead(getAddr_Abs()))); PC += 3; break; }
-            case 0x70: { opBranch(flagIsSet(OVERFLOW_FLAG)); break; }
-            case 0x71: { checkBugIndIdx(); opAdc(mapper.ioRead(getAddr_Ind_Idx())); PC += 2; break; }
-            case 0x75: { opAdc(mapper.ioRead((getValImmed() + regX) & 0xFF)); PC += 2; break; }
-            case 0x76: { mapper.ioWrite((getValImmed() + regX) & 0xff, opRor(mapper.ioRead((getValImmed() + regX) & 0xff))); PC += 2; break; }
-            case 0x78: { turnOnFlags(INTERRUPT_FLAG); mapper.setIrqDelayFlag(true); PC++; break; }
-            case 0x79: { checkBugAbsInd(regY); opAdc(mapper.ioRead((getAddr_Abs() + regY) & 0xffff)); PC += 3; break; }
-            case 0x7A: { PC++; break;}
-
-            case 0x7C: { PC += 3; break; }
-            case 0x7D: { checkBugAbsInd(regX); opAdc(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)); PC += 3; break; }
-            case 0x7E: { mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opRor(mapper.ioRead((getAddr_Abs() + regX) & 0xffff))); PC += 3; break; }
- 
-            case 0x80: { PC+=2; break; }
-            case 0x81: { mapper.ioWrite(getAddr_Idx_Ind(), regA); PC += 2; break; }
-            case 0x84: { mapper.ioWrite(getValImmed(), regY); PC += 2; break; }
-            case 0x85: { mapper.ioWrite(getValImmed(), regA); PC += 2; break; }
-            case 0x86: { mapper.ioWrite(getValImmed(), regX); PC += 2; break; }
-            case 0x88: { setRegY(opIncDec(regY, -1)); PC++; break; }
-            case 0x8A: { setRegA(regX); PC++; break; }
-            case 0x8C: { mapper.ioWrite(getAddr_Abs(), regY); PC += 3; break; }
-            case 0x8D: { mapper.ioWrite(getAddr_Abs(), regA); PC += 3; break; }
-            case 0x8E: { mapper.ioWrite(getAddr_Abs(), regX); PC += 3; break; }
-            case 0x90: { opBranch(!flagIsSet(CARRY_FLAG)); break; }
-            case 0x91: { mapper.ioWrite(getAddr_Ind_Idx(), regA); PC += 2; break; }
-            case 0x94: { mapper.ioWrite((getValImmed() + regX) & 0xff, regY); PC += 2; break; }
-            case 0x95: { mapper.ioWrite((getValImmed() + regX) & 0xff, regA); PC += 2; break; }
-            case 0x96: { mapper.ioWrite((getValImmed() + regY) & 0xff, regX); PC += 2; break; }
-            case 0x98: { setRegA(regY); PC++; break; }
-            case 0x99: { mapper.ioWrite((getAddr_Abs() + regY) & 0xffff, regA); PC += 3; break; }
-            case 0x9A: { regSP = regX; PC++; break; }
-            case 0x9C: { opAndXY(regY, regX); PC += 3; break; }
-            case 0x9E: { opAndXY(regX, regY); PC += 3; break; }
-            case 0x9D: { mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, regA); PC += 3; break; }
-            case 0xA0: { setRegY(getValImmed()); PC += 2; break; }
-            case 0xA1: { setRegA(mapper.ioRead(getAddr_Idx_Ind())); PC += 2; break; }
-            case 0xA2: { setRegX(getValImmed()); PC += 2; break; }
-            case 0xA4: { setRegY(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0xA5: { setRegA(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0xA6: { setRegX(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0xA8: { setRegY(regA); PC++; break; }
-            case 0xA9: { setRegA(getValImmed()); PC += 2; break; }
-            case 0xAA: { setRegX(regA); PC++; break; }
-            case 0xAC: { setRegY(mapper.ioRead(getAddr_Abs())); PC += 3;; break; }
-            case 0xAD: { setRegA(mapper.ioRead(getAddr_Abs())); PC += 3; break; }
-            case 0xAE: { setRegX(mapper.ioRead(getAddr_Abs())); PC += 3; break; }
-            case 0xB0: { opBranch(flagIsSet(CARRY_FLAG)); break; }
-            case 0xB1: { checkBugIndIdx(); setRegA(mapper.ioRead(getAddr_Ind_Idx())); PC += 2; break; }
-            case 0xB4: { setRegY(mapper.ioRead((getValImmed() + regX) & 0xFF)); PC += 2; break; }
-            case 0xB5: { setRegA(mapper.ioRead((getValImmed() + regX) & 0xFF)); PC += 2; break; }
-            case 0xB6: { setRegX(mapper.ioRead((getValImmed() + regY) & 0xFF)); PC += 2; break; }
-            case 0xB8: { turnOffFlags(OVERFLOW_FLAG); PC++; break; }
-            case 0xB9: { checkBugAbsInd(regY); setRegA(mapper.ioRead((getAddr_Abs() + regY) & 0xffff)); PC += 3; break; }
-            case 0xBA: { setRegX(regSP); PC++; break; }
-            case 0xBC: { checkBugAbsInd(regX); setRegY(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)); PC += 3; break; }
-            case 0xBD: { checkBugAbsInd(regX); setRegA(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)); PC += 3; break; }
-            case 0xBE: { checkBugAbsInd(regY); setRegX(mapper.ioRead((getAddr_Abs() + regY) & 0xffff)); PC += 3; break; }
-            case 0xC0: { opCpy(getValImmed()); PC += 2; break; }
-            case 0xC1: { opCmp(mapper.ioRead(getAddr_Idx_Ind())); PC += 2; break; }
-            case 0xC4: { opCpy(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0xC5: { opCmp(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0xC6: { mapper.ioWrite(getValImmed(), opIncDec(mapper.ioRead(getValImmed()), -1)); PC += 2;  break; }
-            case 0xC8: { setRegY(opIncDec(regY, 1)); PC++; break;  }
-            case 0xC9: { opCmp(getValImmed()); PC += 2; break; }
-            case 0xCA: { setRegX(opIncDec(regX, -1)); PC++; break; }
-            case 0xCC: { opCpy(mapper.ioRead(getAddr_Abs())); PC += 3; break; }
-            case 0xCD: { opCmp(mapper.ioRead(getAddr_Abs())); PC += 3; break;  }
-            case 0xCE: { mapper.ioWrite(getAddr_Abs(), opIncDec(mapper.ioRead(getAddr_Abs()), -1)); PC += 3; break; }
-            case 0xD0: { opBranch(!flagIsSet(ZERO_FLAG)); break; }
-            case 0xD1: { checkBugIndIdx(); opCmp(mapper.ioRead(getAddr_Ind_Idx())); PC += 2;  break; }
-         
-            case 0xD4: { PC += 2; break; }
-            case 0xD5: { opCmp(mapper.ioRead((getValImmed() + regX) & 0xFF)); PC += 2; break; }
-            case 0xD6: { mapper.ioWrite((getValImmed() + regX) & 0xff, opIncDec(mapper.ioRead((getValImmed() + regX) & 0xff), -1)); PC += 2; break; }
-            case 0xD7: { opCmp((mapper.ioRead(getAddr_Idx_Ind())-1) & 0xFF); PC += 2; break; }
-            
-            case 0xD8: { turnOffFlags(DECIMAL_FLAG); PC++; break; }
-            case 0xD9: { checkBugAbsInd(regY); opCmp(mapper.ioRead((getAddr_Abs() + regY) & 0xffff)); PC += 3; break; }
-            case 0xDA: { PC++; break; }
-            case 0xDD: { checkBugAbsInd(regX); opCmp(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)); PC += 3; break; }
-            case 0xDE: { mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opIncDec(mapper.ioRead((getAddr_Abs() + regX) & 0xffff), -1)); PC += 3; break; }
-            case 0xDF: { checkBugAbsInd(regX); opCmp(((mapper.ioRead((getAddr_Abs() + regX) & 0xffff)) - 1) & 0xFF); PC += 3; break; }
-            
-            case 0xE0: { opCpx(getValImmed()); PC += 2; break; }
-            case 0xE1: { opSbc(mapper.ioRead(getAddr_Idx_Ind())); PC += 2; break; }
-            case 0xE2: { PC+=2; break; }
-
-            case 0xE4: { opCpx(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0xE5: { opSbc(mapper.ioRead(getValImmed())); PC += 2; break; }
-            case 0xE6: { mapper.ioWrite(getValImmed(), opIncDec(mapper.ioRead(getValImmed()), 1)); PC += 2;  break; }
-            case 0xE8: { setRegX(opIncDec(regX, 1)); PC++; break; }
-            case 0xE9: { opSbc(getValImmed()); PC += 2; break; }
-            case 0xEA: { PC++; break; }
-            case 0xEC: { opCpx(mapper.ioRead(getAddr_Abs())); PC += 3; break; }
-            case 0xED: { opSbc(mapper.ioRead(getAddr_Abs())); PC += 3; break; }
-            case 0xEE: { mapper.ioWrite(getAddr_Abs(), opIncDec(mapper.ioRead(getAddr_Abs()), 1)); PC += 3; break; }
-            case 0xF0: { opBranch(flagIsSet(ZERO_FLAG)); break; }
-            case 0xF1: { checkBugIndIdx(); opSbc(mapper.ioRead(getAddr_Ind_Idx())); PC += 2; break; }
-            case 0xF5: { opSbc(mapper.ioRead((getValImmed() + regX) & 0xFF)); PC += 2; break; }
-            case 0xF6: { mapper.ioWrite((getValImmed() + regX) & 0xff, opIncDec(mapper.ioRead((getValImmed() + regX) & 0xff), 1)); PC += 2; break; }
-            case 0xF8: { turnOnFlags(DECIMAL_FLAG); PC++; break; }
-            case 0xF9: { checkBugAbsInd(regY); opSbc(mapper.ioRead((getAddr_Abs() + regY) & 0xffff)); PC += 3; break; }
-            case 0xFA: { PC++; break; }
-            case 0xFD: { checkBugAbsInd(regX); opSbc(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)); PC += 3; break; }
-            case 0xFE: { mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opIncDec(mapper.ioRead((getAddr_Abs() + regX) & 0xffff), 1)); PC += 3; break; }
-            case 0xFF: { 
-            			 int temp = opIncDec(mapper.ioRead((getAddr_Abs() + regX) & 0xffff), 1);
-            			 mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, temp);
-            			 opSbc(temp);
-            			 PC += 3;
-            			 break; 
-            }
+            case 0x00: brk(); break;
+            case 0x01: oraIzx(); break;
+            case 0x04: nopZp(); break;
+            case 0x05: oraZp(); break;
+            case 0x06: aslZp(); break;
+            case 0x08: php(); break;
+            case 0x09: oraImm(); break;
+            case 0x0A: aslAcc(); break;
+            case 0x0D: oraAbs(); break;
+            case 0x0E: aslAbs(); break;
+            case 0x10: bpl(); break;
+            case 0x11: oraIzy(); break;
+            case 0x15: oraZpx(); break;
+            case 0x16: aslZpx(); break;
+            case 0x18: clc(); break;
+            case 0x19: oraAby(); break;
+            case 0x1A: nopImp(); break;
+            case 0x1D: oraAbx(); break;
+            case 0x1E: aslAbx(); break;
+            case 0x20: jsr(); break;
+            case 0x21: andIzx(); break;
+            case 0x24: bitZp(); break;
+            case 0x25: andZp(); break;
+            case 0x26: rolZp(); break;
+            case 0x28: plp(); break;
+            case 0x29: andImm(); break;
+            case 0x2A: rolAcc(); break;
+            case 0x2C: bitAbs(); break;
+            case 0x2D: andAbs(); break;
+            case 0x2E: rolAbs(); break;
+            case 0x30: bmi(); break;
+            case 0x31: andIzy(); break;
+            case 0x35: andZpx(); break;
+            case 0x36: rolZpx(); break;
+            case 0x38: sec(); break;
+            case 0x39: andAby(); break;
+            case 0x3D: andAbx(); break;
+            case 0x3E: rolAbx(); break;
+            case 0x40: rti(); break;
+            case 0x41: eorIzx(); break;
+            case 0x45: eorZp(); break;
+            case 0x46: lsrZp(); break;
+            case 0x48: pha(); break;
+            case 0x49: eorImm(); break;
+            case 0x4A: lsrAcc(); break;
+            case 0x4C: jmpAbs(); break;
+            case 0x4D: eorAbs(); break;
+            case 0x4E: lsrAbs(); break;
+            case 0x50: bvc(); break;
+            case 0x51: eorIzy(); break;
+            case 0x55: eorZpx(); break;
+            case 0x56: lsrZpx(); break;
+            case 0x58: cli(); break;
+            case 0x59: eorAby(); break;
+            case 0x5A: nopImp(); break;
+            case 0x5D: eorAbx(); break;
+            case 0x5E: lsrAbx(); break;
+            case 0x60: rts(); break;
+            case 0x61: adcIzx(); break;
+            case 0x65: adcZp(); break;
+            case 0x66: rorZp(); break;
+            case 0x68: pla(); break;
+            case 0x69: adcImm(); break;
+            case 0x6A: rorAcc(); break;
+            case 0x6C: jmpInd(); break;
+            case 0x6D: adcAbs(); break;
+            case 0x6E: rorAbs(); break;
+            case 0x70: bvs(); break;
+            case 0x71: adcIzy(); break;
+            case 0x75: adcZpx(); break;
+            case 0x76: rorZpx(); break;
+            case 0x78: sei(); break;
+            case 0x79: adcAby(); break;
+            case 0x7A: nopImp(); break;
+            case 0x7C: nopAbs(); break;
+            case 0x7D: adcAbx(); break;
+            case 0x7E: rorAbx(); break;
+            case 0x80: nopImm(); break;
+            case 0x81: staIzx(); break;
+            case 0x84: styZp(); break;
+            case 0x85: staZp(); break;
+            case 0x86: stxZp(); break;
+            case 0x88: dey(); break;
+            case 0x8A: txa(); break;
+            case 0x8C: styAbs(); break;
+            case 0x8D: staAbs(); break;
+            case 0x8E: stxAbs(); break;
+            case 0x90: bcc(); break;
+            case 0x91: staIzy(); break;
+            case 0x94: styZpx(); break;
+            case 0x95: staZpx(); break;
+            case 0x96: stxZpy(); break;
+            case 0x98: tya(); break;
+            case 0x99: staAby(); break;
+            case 0x9A: txs(); break;
+            case 0x9C: shyAbx(); break;
+            case 0x9D: staAbx(); break;
+            case 0x9E: shxAby(); break;
+            case 0xA0: ldyImm(); break;
+            case 0xA1: ldaIzx(); break;
+            case 0xA2: ldxImm(); break;
+            case 0xA4: ldyZp(); break;
+            case 0xA5: ldaZp(); break;
+            case 0xA6: ldxZp(); break;
+            case 0xA8: tay(); break;
+            case 0xA9: ldaImm(); break;
+            case 0xAA: tax(); break;
+            case 0xAC: ldyAbs(); break;
+            case 0xAD: ldaAbs(); break;
+            case 0xAE: ldxAbs(); break;
+            case 0xB0: bcs(); break;
+            case 0xB1: ldaIzy(); break;
+            case 0xB4: ldyZpx(); break;
+            case 0xB5: ldaZpx(); break;
+            case 0xB6: ldxZpy(); break;
+            case 0xB8: clv(); break;
+            case 0xB9: ldaAby(); break;
+            case 0xBA: tsx(); break;
+            case 0xBC: ldyAbx(); break;
+            case 0xBD: ldaAbx(); break;
+            case 0xBE: ldxAby(); break;
+            case 0xC0: cpyImm(); break;
+            case 0xC1: cmpIzx(); break;
+            case 0xC4: cpyZp(); break;
+            case 0xC5: cmpZp(); break;
+            case 0xC6: decZp(); break;
+            case 0xC8: iny(); break;
+            case 0xC9: cmpImm(); break;
+            case 0xCA: dex(); break;
+            case 0xCC: cpyAbs(); break;
+            case 0xCD: cmpAbs(); break;
+            case 0xCE: decAbs(); break;
+            case 0xD0: bne(); break;
+            case 0xD1: cmpIzy(); break;
+            case 0xD4: nopZpx(); break;
+            case 0xD5: cmpZpx(); break;
+            case 0xD6: decZpx(); break;
+            case 0xD7: dcpIzx(); break;
+            case 0xD8: cld(); break;
+            case 0xD9: cmpAby(); break;
+            case 0xDA: nopImp(); break;
+            case 0xDD: cmpAbx(); break;
+            case 0xDE: decAbx(); break;
+            case 0xDF: dcpAbx(); break;
+            case 0xE0: cpxImm(); break;
+            case 0xE1: sbcIzx(); break;
+            case 0xE2: nopImm(); break;
+            case 0xE4: cpxZp(); break;
+            case 0xE5: sbcZp(); break;
+            case 0xE6: incZp(); break;
+            case 0xE8: inx(); break;
+            case 0xE9: sbcImm(); break;
+            case 0xEA: nop(); break;
+            case 0xEC: cpxAbs(); break;
+            case 0xED: sbcAbs(); break;
+            case 0xEE: incAbs(); break;
+            case 0xF0: beq(); break;
+            case 0xF1: sbcIzy(); break;
+            case 0xF5: sbcZpx(); break;
+            case 0xF6: incZpx(); break;
+            case 0xF8: sed(); break;
+            case 0xF9: sbcAby(); break;
+            case 0xFA: nopImp(); break;
+            case 0xFD: sbcAbx(); break;
+            case 0xFE: incAbx(); break;
+            case 0xFF: iscAbx(); break;
             default:
             	System.out.printf("Invalid Opcode: %x \n", currentOpcode);
-            	break;          
-        
+            	break;
         }
         if(updateInterruptCycles) {
         	currentCycles+=7;
@@ -834,6 +1168,823 @@ class Cpu {
 
     }
     
+    // tratadores dos opcodes (um metodo pequeno por opcode e modo de enderecamento, compilados e inlinados separadamente pelo JIT)
+    private void brk() {
+    	opInterrupt((PC + 2) & 0xFFFF, mapper.getIrqAddr(), getFlags() | BREAK_FLAG | BIT_5);
+    }
+
+    private void oraIzx() {
+    	opOr(mapper.ioRead(getAddr_Idx_Ind()));
+    	PC += 2;
+    }
+
+    private void nopZp() {
+    	PC += 2;
+    }
+
+    private void oraZp() {
+    	opOr(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void aslZp() {
+    	mapper.ioWrite(getValImmed(), opAsl(mapper.ioRead(getValImmed())));
+    	PC += 2;
+    }
+
+    private void php() {
+    	pushByte(getFlags() | BREAK_FLAG | 0x20);
+    	PC++;
+    }
+
+    private void oraImm() {
+    	opOr(getValImmed());
+    	PC += 2;
+    }
+
+    private void aslAcc() {
+    	setRegA(opAsl(regA));
+    	PC++;
+    }
+
+    private void oraAbs() {
+    	opOr(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void aslAbs() {
+    	mapper.ioWrite(getAddr_Abs(), opAsl(mapper.ioRead(getAddr_Abs())));
+    	PC += 3;
+    }
+
+    private void bpl() {
+    	opBranch(!isNegative());
+    }
+
+    private void oraIzy() {
+    	checkBugIndIdx();
+    	opOr(mapper.ioRead(getAddr_Ind_Idx()));
+    	PC += 2;
+    }
+
+    private void oraZpx() {
+    	opOr(mapper.ioRead((getValImmed() + regX) & 0xFF));
+    	PC += 2;
+    }
+
+    private void aslZpx() {
+    	mapper.ioWrite((getValImmed() + regX) & 0xff, opAsl(mapper.ioRead((getValImmed() + regX) & 0xff)));
+    	PC += 2;
+    }
+
+    private void clc() {
+    	turnOffFlags(CARRY_FLAG);
+    	PC++;
+    }
+
+    private void oraAby() {
+    	checkBugAbsInd(regY);
+    	opOr(mapper.ioRead((getAddr_Abs() + regY) & 0xffff));
+    	PC += 3;
+    }
+
+    private void nopImp() {
+    	PC++;
+    }
+
+    private void oraAbx() {
+    	checkBugAbsInd(regX);
+    	opOr(mapper.ioRead((getAddr_Abs() + regX) & 0xffff));
+    	PC += 3;
+    }
+
+    private void aslAbx() {
+    	mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opAsl(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)));
+    	PC += 3;
+    }
+
+    private void jsr() {
+    	opJsr();
+    }
+
+    private void andIzx() {
+    	opAnd(mapper.ioRead(getAddr_Idx_Ind()));
+    	PC += 2;
+    }
+
+    private void bitZp() {
+    	opBit(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void andZp() {
+    	opAnd(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void rolZp() {
+    	mapper.ioWrite(getValImmed(), opRol(mapper.ioRead(getValImmed())));
+    	PC += 2;
+    }
+
+    private void plp() {
+    	setFlags(pullByte(1) & 0xef);
+    	mapper.setIrqDelayFlag(true);
+    	mapper.requestInterruptPoll();
+    }
+
+    private void andImm() {
+    	opAnd(getValImmed());
+    	PC += 2;
+    }
+
+    private void rolAcc() {
+    	setRegA(opRol(regA));
+    	PC++;
+    }
+
+    private void bitAbs() {
+    	opBit(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void andAbs() {
+    	opAnd(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void rolAbs() {
+    	mapper.ioWrite(getAddr_Abs(), opRol(mapper.ioRead(getAddr_Abs())));
+    	PC += 3;
+    }
+
+    private void bmi() {
+    	opBranch(isNegative());
+    }
+
+    private void andIzy() {
+    	checkBugIndIdx();
+    	opAnd(mapper.ioRead(getAddr_Ind_Idx()));
+    	PC += 2;
+    }
+
+    private void andZpx() {
+    	opAnd(mapper.ioRead((getValImmed() + regX) & 0xFF));
+    	PC += 2;
+    }
+
+    private void rolZpx() {
+    	mapper.ioWrite((getValImmed() + regX) & 0xff, opRol(mapper.ioRead((getValImmed() + regX) & 0xff)));
+    	PC += 2;
+    }
+
+    private void sec() {
+    	turnOnFlags(CARRY_FLAG);
+    	PC++;
+    }
+
+    private void andAby() {
+    	checkBugAbsInd(regY);
+    	opAnd(mapper.ioRead((getAddr_Abs() + regY) & 0xffff));
+    	PC += 3;
+    }
+
+    private void andAbx() {
+    	checkBugAbsInd(regX);
+    	opAnd(mapper.ioRead((getAddr_Abs() + regX) & 0xffff));
+    	PC += 3;
+    }
+
+    private void rolAbx() {
+    	mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opRol(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)));
+    	PC += 3;
+    }
+
+    private void rti() {
+    	opRti();
+    	mapper.requestInterruptPoll();
+    }
+
+    private void eorIzx() {
+    	opEor(mapper.ioRead(getAddr_Idx_Ind()));
+    	PC += 2;
+    }
+
+    private void eorZp() {
+    	opEor(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void lsrZp() {
+    	mapper.ioWrite(getValImmed(), opLsr(mapper.ioRead(getValImmed())));
+    	PC += 2;
+    }
+
+    private void pha() {
+    	pushByte(regA);
+    	PC++;
+    }
+
+    private void eorImm() {
+    	opEor(getValImmed());
+    	PC += 2;
+    }
+
+    private void lsrAcc() {
+    	setRegA(opLsr(regA));
+    	PC++;
+    }
+
+    private void jmpAbs() {
+    	PC = getAddr_Abs();
+    }
+
+    private void eorAbs() {
+    	opEor(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void lsrAbs() {
+    	mapper.ioWrite(getAddr_Abs(), opLsr(mapper.ioRead(getAddr_Abs())));
+    	PC += 3;
+    }
+
+    private void bvc() {
+    	opBranch(!flagIsSet(OVERFLOW_FLAG));
+    }
+
+    private void eorIzy() {
+    	checkBugIndIdx();
+    	opEor(mapper.ioRead(getAddr_Ind_Idx()));
+    	PC += 2;
+    }
+
+    private void eorZpx() {
+    	opEor(mapper.ioRead((getValImmed() + regX) & 0xFF));
+    	PC += 2;
+    }
+
+    private void lsrZpx() {
+    	mapper.ioWrite((getValImmed() + regX) & 0xff, opLsr(mapper.ioRead((getValImmed() + regX) & 0xff)));
+    	PC += 2;
+    }
+
+    private void cli() {
+    	turnOffFlags(INTERRUPT_FLAG);
+    	mapper.setIrqDelayFlag(true);
+    	mapper.requestInterruptPoll();
+    	PC++;
+    }
+
+    private void eorAby() {
+    	checkBugAbsInd(regY);
+    	opEor(mapper.ioRead((getAddr_Abs() + regY) & 0xffff));
+    	PC += 3;
+    }
+
+    private void eorAbx() {
+    	checkBugAbsInd(regX);
+    	opEor(mapper.ioRead((getAddr_Abs() + regX) & 0xffff));
+    	PC += 3;
+    }
+
+    private void lsrAbx() {
+    	mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opLsr(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)));
+    	PC += 3;
+    }
+
+    private void rts() {
+    	opRts();
+    }
+
+    private void adcIzx() {
+    	opAdc(mapper.ioRead(getAddr_Idx_Ind()));
+    	PC += 2;
+    }
+
+    private void adcZp() {
+    	opAdc(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void rorZp() {
+    	mapper.ioWrite(getValImmed(), opRor(mapper.ioRead(getValImmed())));
+    	PC += 2;
+    }
+
+    private void pla() {
+    	setRegA(pullByte(1));
+    }
+
+    private void adcImm() {
+    	opAdc(getValImmed());
+    	PC += 2;
+    }
+
+    private void rorAcc() {
+    	setRegA(opRor(regA));
+    	PC++;
+    }
+
+    private void jmpInd() {
+    	opJmpInd();
+    }
+
+    private void adcAbs() {
+    	opAdc(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void rorAbs() {
+    	mapper.ioWrite(getAddr_Abs(), opRor(mapper.ioRead(getAddr_Abs())));
+    	PC += 3;
+    }
+
+    private void bvs() {
+    	opBranch(flagIsSet(OVERFLOW_FLAG));
+    }
+
+    private void adcIzy() {
+    	checkBugIndIdx();
+    	opAdc(mapper.ioRead(getAddr_Ind_Idx()));
+    	PC += 2;
+    }
+
+    private void adcZpx() {
+    	opAdc(mapper.ioRead((getValImmed() + regX) & 0xFF));
+    	PC += 2;
+    }
+
+    private void rorZpx() {
+    	mapper.ioWrite((getValImmed() + regX) & 0xff, opRor(mapper.ioRead((getValImmed() + regX) & 0xff)));
+    	PC += 2;
+    }
+
+    private void sei() {
+    	turnOnFlags(INTERRUPT_FLAG);
+    	mapper.setIrqDelayFlag(true);
+    	mapper.requestInterruptPoll();
+    	PC++;
+    }
+
+    private void adcAby() {
+    	checkBugAbsInd(regY);
+    	opAdc(mapper.ioRead((getAddr_Abs() + regY) & 0xffff));
+    	PC += 3;
+    }
+
+    private void nopAbs() {
+    	PC += 3;
+    }
+
+    private void adcAbx() {
+    	checkBugAbsInd(regX);
+    	opAdc(mapper.ioRead((getAddr_Abs() + regX) & 0xffff));
+    	PC += 3;
+    }
+
+    private void rorAbx() {
+    	mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opRor(mapper.ioRead((getAddr_Abs() + regX) & 0xffff)));
+    	PC += 3;
+    }
+
+    private void nopImm() {
+    	PC+=2;
+    }
+
+    private void staIzx() {
+    	mapper.ioWrite(getAddr_Idx_Ind(), regA);
+    	PC += 2;
+    }
+
+    private void styZp() {
+    	mapper.ioWrite(getValImmed(), regY);
+    	PC += 2;
+    }
+
+    private void staZp() {
+    	mapper.ioWrite(getValImmed(), regA);
+    	PC += 2;
+    }
+
+    private void stxZp() {
+    	mapper.ioWrite(getValImmed(), regX);
+    	PC += 2;
+    }
+
+    private void dey() {
+    	setRegY(opIncDec(regY, -1));
+    	PC++;
+    }
+
+    private void txa() {
+    	setRegA(regX);
+    	PC++;
+    }
+
+    private void styAbs() {
+    	mapper.ioWrite(getAddr_Abs(), regY);
+    	PC += 3;
+    }
+
+    private void staAbs() {
+    	mapper.ioWrite(getAddr_Abs(), regA);
+    	PC += 3;
+    }
+
+    private void stxAbs() {
+    	mapper.ioWrite(getAddr_Abs(), regX);
+    	PC += 3;
+    }
+
+    private void bcc() {
+    	opBranch(!flagIsSet(CARRY_FLAG));
+    }
+
+    private void staIzy() {
+    	mapper.ioWrite(getAddr_Ind_Idx(), regA);
+    	PC += 2;
+    }
+
+    private void styZpx() {
+    	mapper.ioWrite((getValImmed() + regX) & 0xff, regY);
+    	PC += 2;
+    }
+
+    private void staZpx() {
+    	mapper.ioWrite((getValImmed() + regX) & 0xff, regA);
+    	PC += 2;
+    }
+
+    private void stxZpy() {
+    	mapper.ioWrite((getValImmed() + regY) & 0xff, regX);
+    	PC += 2;
+    }
+
+    private void tya() {
+    	setRegA(regY);
+    	PC++;
+    }
+
+    private void staAby() {
+    	mapper.ioWrite((getAddr_Abs() + regY) & 0xffff, regA);
+    	PC += 3;
+    }
+
+    private void txs() {
+    	regSP = regX;
+    	PC++;
+    }
+
+    private void shyAbx() {
+    	opAndXY(regY, regX);
+    	PC += 3;
+    }
+
+    private void staAbx() {
+    	mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, regA);
+    	PC += 3;
+    }
+
+    private void shxAby() {
+    	opAndXY(regX, regY);
+    	PC += 3;
+    }
+
+    private void ldyImm() {
+    	setRegY(getValImmed());
+    	PC += 2;
+    }
+
+    private void ldaIzx() {
+    	setRegA(mapper.ioRead(getAddr_Idx_Ind()));
+    	PC += 2;
+    }
+
+    private void ldxImm() {
+    	setRegX(getValImmed());
+    	PC += 2;
+    }
+
+    private void ldyZp() {
+    	setRegY(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void ldaZp() {
+    	setRegA(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void ldxZp() {
+    	setRegX(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void tay() {
+    	setRegY(regA);
+    	PC++;
+    }
+
+    private void ldaImm() {
+    	setRegA(getValImmed());
+    	PC += 2;
+    }
+
+    private void tax() {
+    	setRegX(regA);
+    	PC++;
+    }
+
+    private void ldyAbs() {
+    	setRegY(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void ldaAbs() {
+    	setRegA(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void ldxAbs() {
+    	setRegX(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void bcs() {
+    	opBranch(flagIsSet(CARRY_FLAG));
+    }
+
+    private void ldaIzy() {
+    	checkBugIndIdx();
+    	setRegA(mapper.ioRead(getAddr_Ind_Idx()));
+    	PC += 2;
+    }
+
+    private void ldyZpx() {
+    	setRegY(mapper.ioRead((getValImmed() + regX) & 0xFF));
+    	PC += 2;
+    }
+
+    private void ldaZpx() {
+    	setRegA(mapper.ioRead((getValImmed() + regX) & 0xFF));
+    	PC += 2;
+    }
+
+    private void ldxZpy() {
+    	setRegX(mapper.ioRead((getValImmed() + regY) & 0xFF));
+    	PC += 2;
+    }
+
+    private void clv() {
+    	turnOffFlags(OVERFLOW_FLAG);
+    	PC++;
+    }
+
+    private void ldaAby() {
+    	checkBugAbsInd(regY);
+    	setRegA(mapper.ioRead((getAddr_Abs() + regY) & 0xffff));
+    	PC += 3;
+    }
+
+    private void tsx() {
+    	setRegX(regSP);
+    	PC++;
+    }
+
+    private void ldyAbx() {
+    	checkBugAbsInd(regX);
+    	setRegY(mapper.ioRead((getAddr_Abs() + regX) & 0xffff));
+    	PC += 3;
+    }
+
+    private void ldaAbx() {
+    	checkBugAbsInd(regX);
+    	setRegA(mapper.ioRead((getAddr_Abs() + regX) & 0xffff));
+    	PC += 3;
+    }
+
+    private void ldxAby() {
+    	checkBugAbsInd(regY);
+    	setRegX(mapper.ioRead((getAddr_Abs() + regY) & 0xffff));
+    	PC += 3;
+    }
+
+    private void cpyImm() {
+    	opCpy(getValImmed());
+    	PC += 2;
+    }
+
+    private void cmpIzx() {
+    	opCmp(mapper.ioRead(getAddr_Idx_Ind()));
+    	PC += 2;
+    }
+
+    private void cpyZp() {
+    	opCpy(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void cmpZp() {
+    	opCmp(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void decZp() {
+    	mapper.ioWrite(getValImmed(), opIncDec(mapper.ioRead(getValImmed()), -1));
+    	PC += 2;
+    }
+
+    private void iny() {
+    	setRegY(opIncDec(regY, 1));
+    	PC++;
+    }
+
+    private void cmpImm() {
+    	opCmp(getValImmed());
+    	PC += 2;
+    }
+
+    private void dex() {
+    	setRegX(opIncDec(regX, -1));
+    	PC++;
+    }
+
+    private void cpyAbs() {
+    	opCpy(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void cmpAbs() {
+    	opCmp(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void decAbs() {
+    	mapper.ioWrite(getAddr_Abs(), opIncDec(mapper.ioRead(getAddr_Abs()), -1));
+    	PC += 3;
+    }
+
+    private void bne() {
+    	opBranch(!isZero());
+    }
+
+    private void cmpIzy() {
+    	checkBugIndIdx();
+    	opCmp(mapper.ioRead(getAddr_Ind_Idx()));
+    	PC += 2;
+    }
+
+    private void nopZpx() {
+    	PC += 2;
+    }
+
+    private void cmpZpx() {
+    	opCmp(mapper.ioRead((getValImmed() + regX) & 0xFF));
+    	PC += 2;
+    }
+
+    private void decZpx() {
+    	mapper.ioWrite((getValImmed() + regX) & 0xff, opIncDec(mapper.ioRead((getValImmed() + regX) & 0xff), -1));
+    	PC += 2;
+    }
+
+    private void dcpIzx() {
+    	opCmp((mapper.ioRead(getAddr_Idx_Ind())-1) & 0xFF);
+    	PC += 2;
+    }
+
+    private void cld() {
+    	turnOffFlags(DECIMAL_FLAG);
+    	PC++;
+    }
+
+    private void cmpAby() {
+    	checkBugAbsInd(regY);
+    	opCmp(mapper.ioRead((getAddr_Abs() + regY) & 0xffff));
+    	PC += 3;
+    }
+
+    private void cmpAbx() {
+    	checkBugAbsInd(regX);
+    	opCmp(mapper.ioRead((getAddr_Abs() + regX) & 0xffff));
+    	PC += 3;
+    }
+
+    private void decAbx() {
+    	mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opIncDec(mapper.ioRead((getAddr_Abs() + regX) & 0xffff), -1));
+    	PC += 3;
+    }
+
+    private void dcpAbx() {
+    	checkBugAbsInd(regX);
+    	opCmp(((mapper.ioRead((getAddr_Abs() + regX) & 0xffff)) - 1) & 0xFF);
+    	PC += 3;
+    }
+
+    private void cpxImm() {
+    	opCpx(getValImmed());
+    	PC += 2;
+    }
+
+    private void sbcIzx() {
+    	opSbc(mapper.ioRead(getAddr_Idx_Ind()));
+    	PC += 2;
+    }
+
+    private void cpxZp() {
+    	opCpx(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void sbcZp() {
+    	opSbc(mapper.ioRead(getValImmed()));
+    	PC += 2;
+    }
+
+    private void incZp() {
+    	mapper.ioWrite(getValImmed(), opIncDec(mapper.ioRead(getValImmed()), 1));
+    	PC += 2;
+    }
+
+    private void inx() {
+    	setRegX(opIncDec(regX, 1));
+    	PC++;
+    }
+
+    private void sbcImm() {
+    	opSbc(getValImmed());
+    	PC += 2;
+    }
+
+    private void nop() {
+    	PC++;
+    }
+
+    private void cpxAbs() {
+    	opCpx(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void sbcAbs() {
+    	opSbc(mapper.ioRead(getAddr_Abs()));
+    	PC += 3;
+    }
+
+    private void incAbs() {
+    	mapper.ioWrite(getAddr_Abs(), opIncDec(mapper.ioRead(getAddr_Abs()), 1));
+    	PC += 3;
+    }
+
+    private void beq() {
+    	opBranch(isZero());
+    }
+
+    private void sbcIzy() {
+    	checkBugIndIdx();
+    	opSbc(mapper.ioRead(getAddr_Ind_Idx()));
+    	PC += 2;
+    }
+
+    private void sbcZpx() {
+    	opSbc(mapper.ioRead((getValImmed() + regX) & 0xFF));
+    	PC += 2;
+    }
+
+    private void incZpx() {
+    	mapper.ioWrite((getValImmed() + regX) & 0xff, opIncDec(mapper.ioRead((getValImmed() + regX) & 0xff), 1));
+    	PC += 2;
+    }
+
+    private void sed() {
+    	turnOnFlags(DECIMAL_FLAG);
+    	PC++;
+    }
+
+    private void sbcAby() {
+    	checkBugAbsInd(regY);
+    	opSbc(mapper.ioRead((getAddr_Abs() + regY) & 0xffff));
+    	PC += 3;
+    }
+
+    private void sbcAbx() {
+    	checkBugAbsInd(regX);
+    	opSbc(mapper.ioRead((getAddr_Abs() + regX) & 0xffff));
+    	PC += 3;
+    }
+
+    private void incAbx() {
+    	mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, opIncDec(mapper.ioRead((getAddr_Abs() + regX) & 0xffff), 1));
+    	PC += 3;
+    }
+
+    private void iscAbx() {
+    	int temp = opIncDec(mapper.ioRead((getAddr_Abs() + regX) & 0xffff), 1);
+    	mapper.ioWrite((getAddr_Abs() + regX) & 0xffff, temp);
+    	opSbc(temp);
+    	PC += 3;
+    }
+
     int getCurrentCycles() {
     	
     	return currentCycles;
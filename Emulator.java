@@ -0,0 +1,282 @@
+/**
+ * Emulator.java
+ * Nucleo do emulador, sem dependencia de Swing, AWT ou placa de som
+ * integra cartucho, mapper, CPU, PPU, APU e console e executa quadro a quadro;
+ * imagem, som e controles passam por interfaces (VideoSink, AudioSink, InputSource)
+ * fornecidas pela interface grafica (Jamicom) ou por processos em lote sem tela
+ */
+
+package com.jamicom;
+
+import java.io.IOException;
+
+public class Emulator {
+
+	private Cartridge cartridge;
+	private Mapper mapper;
+	private Cpu cpu;
+	private Ppu ppu;
+	private Apu apu;
+	private Console console;
+	private Screen screen;
+	private Controller controller;
+	private VideoSink videoSink;
+	private AudioSink audioSink;
+	private InputSource inputSource;
+	private long frameCount;
+
+	public Emulator(VideoSink videoSink, AudioSink audioSink, InputSource inputSource) throws IOException {
+		this.videoSink = videoSink;
+		this.audioSink = audioSink;
+		this.inputSource = inputSource;
+		screen = new Screen();
+		controller = new Controller();
+		cpu = new Cpu();
+		ppu = new Ppu();
+		apu = new Apu();
+		console = new Console();
+	}
+
+	// emulador sem tela, sem som e sem controles (processos em lote, medicao de desempenho)
+	public Emulator() throws IOException {
+		this(VideoSink.NONE, AudioSink.NONE, InputSource.NONE);
+	}
+
+	// cria o mapper do cartucho e inicializa os subsistemas
+	public void loadCartridge(Cartridge cartridge) throws IOException {
+		this.cartridge = cartridge;
+		mapper = createMapper(cartridge.getMapperNum());
+		if(mapper == null)
+			mapper = new Mapper();
+		console.setup(this);
+		screen.setup(ppu);
+		cpu.setup(mapper);
+		ppu.setup(this);
+		apu.setup(this);
+		mapper.setup(this);
+		cpu.reset(mapper.getRstAddr());
+		console.reset();
+		frameCount = 0;
+	}
+
+	static boolean isMapperSupported(int mapperNum) {
+		return createMapper(mapperNum) != null;
+	}
+
+	private static Mapper createMapper(int mapperNum) {
+		Mapper mapper;
+		/**
+		 * MAPPERS = sistemas de bank switching da placa dos cartuchos que permitia ao NES executar jogos com mais de 65 kilobytes.
+		 * Alguns mappers tamb�m s�o capazes de gerar interrup��es de hardware e outros melhoram o som.
+		 * Cada softhouse produzia seu pr�prio mapper. At� o momento, mais de 100 mappers foram documentados.
+		 * Aqui implementei apenas dois dos mais populares. Quanto mais mappers emulados, mais jogos s�o suportados pelo emulador.
+		 * At� o momento > 600 jogos testados e funcionantes.
+		 */
+    	switch(mapperNum) { 
+			case   0: mapper = new Mapper(); break; 
+		//	case   1: mapper = new Mapper001(this); break;
+			case   2: mapper = new Mapper002(); break;/*
+    		case   3: mapper = new Mapper003(this); break;
+    		case   4: mapper = new Mapper004(this); break;
+    		case   5: mapper = new Mapper005(this); break;
+
+    		case   7: mapper = new Mapper007(this); break;
+
+    		case   9: mapper = new Mapper009(this); break;
+       		case  10: mapper = new Mapper010(this); break;
+    		case   11: mapper = new Mapper011(this); break;
+
+    		case  16: mapper = new Mapper016(this); break;
+
+    		case  18: mapper = new Mapper018(this); break;
+    		case  19: mapper = new Mapper019(this); break;
+
+    		case  21: mapper = new Mapper021(this); break;
+    		case  22: mapper = new Mapper022(this); break;
+       		case  23: mapper = new Mapper023(this); break;
+
+       		case  25: mapper = new Mapper025(this); break;
+      		case  26: mapper = new Mapper026(this); break;
+      		 
+    		case  32: mapper = new Mapper032(this); break;
+    		case  33: mapper = new Mapper033(this); break;
+    		case  34: mapper = new Mapper034(this); break;
+
+    		case  64: mapper = new Mapper064(this); break;
+
+    		case  66: mapper = new Mapper066(this); break;
+    		case  67: mapper = new Mapper067(this); break;
+    		case  68: mapper = new Mapper068(this); break;
+    		case  69: mapper = new Mapper069(this); break;
+    		case  70: mapper = new Mapper070(this); break;
+    		case  71: mapper = new Mapper071(this); break;
+    		case  72: mapper = new Mapper072(this); break;
+
+    		case  75: mapper = new Mapper075(this); break;
+
+    		case  78: mapper = new Mapper078(this); break;
+    		case  79: mapper = new Mapper079(this); break;
+
+    		case  80: mapper = new Mapper080(this); break;
+
+
+    		case  87: mapper = new Mapper087(this); break; 
+    		case  88: mapper = new Mapper088(this); break; 
+    		case  89: mapper = new Mapper089(this); break; 
+
+    		case  91: mapper = new Mapper091(this); break; 
+
+    		case  94: mapper = new Mapper094(this); break;
+    		case  95: mapper = new Mapper095(this); break;
+
+    		case  97: mapper = new Mapper097(this); break;
+
+    		case 118: mapper = new Mapper118(this); break;
+    		case 119: mapper = new Mapper119(this); break;
+
+    		case 140: mapper = new Mapper140(this); break;
+
+    		case 152: mapper = new Mapper152(this); break;
+
+    		case 154: mapper = new Mapper154(this); break;
+
+    		case 184: mapper = new Mapper184(this); break;
+
+    		case 189: mapper = new Mapper189(this); break;
+
+    		case 206: mapper = new Mapper206(this); break;
+
+    		case 210: mapper = new Mapper210(this); break;
+
+    		case  65: mapper = new Mapper065(this); break;	*/
+    		/*
+
+    		case  72: mapper = new Mapper072(this); break;
+    		case  93: mapper = new Mapper093(this); break; 
+
+    		case 180: mapper = new Mapper180(this); break;
+*/
+    		default :
+    			mapper = null;
+    	}
+		return mapper;
+	}
+
+	// executa um quadro: le os controles, emula 262 linhas e entrega imagem e som aos destinos
+	public void runFrame() {
+		controller.setButtons(inputSource.getButtons(frameCount));
+		console.runFrame();
+
+		// ao final envia as amostras de audio para o destino de audio
+		apu.audioPlayFrame();
+
+		// entrega a tela ja convertida para exibicao
+		videoSink.frameReady(screen.getScreenBuffer());
+		screen.resetDrawBuffer();
+		frameCount++;
+	}
+
+	public void runFrames(int frames) {
+		for (int n = 0; n < frames; n++)
+			runFrame();
+	}
+
+	// pausa o som (a emulacao em si e controlada por quem chama runFrame)
+	public void setHalted(boolean halted) {
+		apu.setHalted(halted);
+	}
+
+	/* taxa de saida do audio em amostras por segundo (padrao Globals.SAMPLE_RATE)
+	 * o destino de audio deve esperar a mesma taxa; vale a partir do fim do quadro atual
+	 */
+	public void setSampleRate(int sampleRate) {
+		apu.setSampleRate(sampleRate);
+	}
+
+	public int getSampleRate() {
+		return apu.getSampleRate();
+	}
+
+	// ajuste fino da taxa de saida do audio (controle dinamico de taxa; 1.0 = taxa nominal)
+	public void setAudioRateAdjust(double adjust) {
+		apu.setRateAdjust(adjust);
+	}
+
+	/* modo mudo (lotes, avanco rapido, janela sem som): registradores, contadores, IRQs e DMA da APU
+	 * continuam exatos, mas as formas de onda nao sao sintetizadas nem mixadas; o destino recebe silencio
+	 */
+	public void setAudioMuted(boolean muted) {
+		apu.setMuted(muted);
+	}
+
+	public boolean isAudioMuted() {
+		return apu.isMuted();
+	}
+
+	/* sintese do audio em outra thread (ApuWorker): a APU desta thread emula apenas o que a CPU enxerga
+	 * e registra as escritas nos registradores; o destino de audio passa a ser chamado pela thread "apu"
+	 * deve ser chamado antes de loadCartridge, com a APU ainda no estado inicial
+	 */
+	public void startAudioThread() {
+		if (cartridge != null)
+			throw new IllegalStateException("a thread de audio deve ser iniciada antes de carregar o cartucho");
+		apu.startWorker(audioSink);
+	}
+
+	// encerra a thread de audio; a sintese volta para esta thread a partir do proximo quadro
+	// deve ser chamado pela thread que executa runFrame (a APU nao e compartilhada entre threads)
+	public void stopAudioThread() {
+		apu.stopWorker();
+	}
+
+	/* recompilacao dos blocos quentes da PRG ROM em bytecode (Recompiler), desligada por padrao
+	 * o resultado da emulacao e o mesmo do interpretador; o ganho depende de quanto do codigo e CPU pura
+	 */
+	public void setRecompilerEnabled(boolean enabled) {
+		cpu.setRecompilerEnabled(enabled);
+	}
+
+	public boolean isRecompilerEnabled() {
+		return cpu.isRecompilerEnabled();
+	}
+
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	Cartridge getCartridge() {
+		return cartridge;
+	}
+
+	Controller getController() {
+		return controller;
+	}
+
+	Mapper getMapper() {
+		return mapper;
+	}
+
+	Ppu getPpu() {
+		return ppu;
+	}
+
+	Apu getApu() {
+		return apu;
+	}
+
+	Cpu getCpu() {
+		return cpu;
+	}
+
+	Screen getScreen() {
+		return screen;
+	}
+
+	Console getConsole() {
+		return console;
+	}
+
+	AudioSink getAudioSink() {
+		return audioSink;
+	}
+}
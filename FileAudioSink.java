@@ -0,0 +1,156 @@
+/**
+ * FileAudioSink.java
+ * Grava o audio da APU em arquivo WAV (extensao .wav) ou PCM cru (qualquer outra), para capturas longas sem tela
+ * as amostras sao convertidas para 16 bits little-endian (formato do WAV; no PCM cru equivale a s16le mono)
+ * e acumuladas em ByteBuffers diretos reaproveitados; uma thread propria grava cada buffer cheio pelo FileChannel,
+ * de modo que a emulacao so copia memoria; no WAV o cabecalho RIFF e gravado no inicio e corrigido em close()
+ */
+
+package com.jamicom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+class FileAudioSink implements AudioSink {
+
+	private static final int BUFFER_SIZE = 1 << 16;		// bytes por escrita no arquivo (~0,7 s a 48 Khz)
+	private static final int BUFFER_COUNT = 4;
+	private static final int WAV_HEADER_SIZE = 44;
+
+	private final FileChannel channel;
+	private final boolean wav;
+	private final int sampleRate;
+	private final BlockingQueue<ByteBuffer> freeBuffers;	// prontos para receber amostras
+	private final BlockingQueue<ByteBuffer> fullBuffers;	// aguardando gravacao
+	private final ByteBuffer endMarker;					// buffer vazio que encerra a thread de gravacao
+	private final Thread writerThread;
+	private ByteBuffer current;
+	private long dataBytes;
+	private volatile IOException error;					// primeira falha de gravacao, relatada em close()
+
+	FileAudioSink(File file, int sampleRate) throws IOException {
+		this.sampleRate = sampleRate;
+		wav = file.getName().toLowerCase().endsWith(".wav");
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		output.setLength(0);
+		channel = output.getChannel();
+
+		freeBuffers = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT);
+		fullBuffers = new ArrayBlockingQueue<ByteBuffer>(BUFFER_COUNT + 1);
+		for (int n = 0; n < BUFFER_COUNT; n++)
+			freeBuffers.add(ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+		endMarker = ByteBuffer.allocate(0);
+		current = freeBuffers.poll();
+
+		// cabecalho provisorio; os tamanhos sao preenchidos em close()
+		if (wav)
+			channel.write(wavHeader(0), 0);
+		channel.position(wav ? WAV_HEADER_SIZE : 0);
+
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeBuffers();
+			}
+		}, "audio-file");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	// converte as amostras (16 bits big-endian) para little-endian no buffer atual
+	public void writeFrame(byte[] samples, int length) {
+		for (int n = 0; n + 1 < length; n += 2) {
+			if (!current.hasRemaining())
+				handOff();
+			current.putShort((short) (samples[n] << 8 | samples[n + 1] & 0xFF));
+		}
+		dataBytes += length & ~1;
+	}
+
+	// entrega o buffer cheio a thread de gravacao e pega um livre (aguarda se o disco estiver atrasado)
+	private void handOff() {
+		current.flip();
+		try {
+			fullBuffers.put(current);
+			current = freeBuffers.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("gravacao de audio interrompida", e);
+		}
+	}
+
+	// laco da thread de gravacao
+	private void writeBuffers() {
+		try {
+			while (true) {
+				ByteBuffer buffer = fullBuffers.take();
+				if (buffer == endMarker)
+					return;
+				try {
+					while (buffer.hasRemaining())
+						channel.write(buffer);
+				}
+				catch (IOException e) {
+					if (error == null)
+						error = e;
+				}
+				buffer.clear();
+				freeBuffers.put(buffer);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	long getDataBytes() {
+		return dataBytes;
+	}
+
+	// grava o restante, corrige o cabecalho do WAV e fecha o arquivo
+	void close() throws IOException {
+		try {
+			current.flip();
+			fullBuffers.put(current);
+			fullBuffers.put(endMarker);
+			writerThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			if (error != null)
+				throw error;
+			if (wav)
+				channel.write(wavHeader(dataBytes), 0);
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	// cabecalho RIFF/WAVE de PCM 16 bits mono
+	private ByteBuffer wavHeader(long dataSize) {
+		int size = (int) Math.min(dataSize, 0xFFFFFFFFL - 36);
+		int blockAlign = Globals.AUDIO_CHANNELS * Globals.BITS_PER_SAMPLE / 8;
+		ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(new byte[] {'R', 'I', 'F', 'F'}).putInt(36 + size);
+		header.put(new byte[] {'W', 'A', 'V', 'E'});
+		header.put(new byte[] {'f', 'm', 't', ' '}).putInt(16);
+		header.putShort((short) 1);		// PCM
+		header.putShort((short) Globals.AUDIO_CHANNELS);
+		header.putInt(sampleRate);
+		header.putInt(sampleRate * blockAlign);
+		header.putShort((short) blockAlign);
+		header.putShort((short) Globals.BITS_PER_SAMPLE);
+		header.put(new byte[] {'d', 'a', 't', 'a'}).putInt(size);
+		header.flip();
+		return header;
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * FramePacer.java
+ * Marca o ritmo dos quadros da emulacao por temporizador, sem laco de espera ocupada
+ * cada quadro tem um prazo absoluto (System.nanoTime); a thread dorme com parkNanos ate o prazo
+ * o ritmo segue a taxa de atualizacao do monitor quando ela e proxima da do NES (quadros sem repeticao ou salto),
+ * a diferenca para os 60.0988 Hz originais e absorvida pelo controle dinamico de taxa do audio
+ */
+
+package com.jamicom;
+
+import java.util.concurrent.locks.LockSupport;
+
+class FramePacer {
+
+	static final double NES_FRAME_RATE = 60.0988;		// quadros por segundo do NES (NTSC)
+	private static final double MAX_RATE_DEVIATION = 0.01;	// monitores ate 1% fora da taxa do NES ditam o ritmo
+	private static final int MAX_LAG_FRAMES = 4;		// atraso maior que isso reinicia a referencia (sem rajada de quadros)
+
+	private final long framePeriod;		// nanossegundos por quadro
+	private long deadline;				// prazo do proximo quadro (0 = ainda nao iniciado)
+
+	FramePacer(double framesPerSecond) {
+		framePeriod = (long) (1e9 / framesPerSecond);
+	}
+
+	/* escolhe o ritmo a partir da taxa do monitor (Hz); taxa desconhecida (0)
+	 * ou distante da do NES mantem a taxa original
+	 */
+	static double frameRateFor(int displayRefreshRate) {
+		if (displayRefreshRate > 0 && Math.abs(displayRefreshRate / NES_FRAME_RATE - 1) <= MAX_RATE_DEVIATION)
+			return displayRefreshRate;
+		return NES_FRAME_RATE;
+	}
+
+	// aguarda o prazo do proximo quadro
+	void waitNextFrame() {
+		long now = System.nanoTime();
+		if (deadline == 0 || now - deadline > framePeriod * MAX_LAG_FRAMES)
+			deadline = now;
+		deadline += framePeriod;
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0)
+			LockSupport.parkNanos(remaining);
+	}
+
+	// descarta o prazo atual (ex.: apos pausa ou troca de ROM)
+	void reset() {
+		deadline = 0;
+	}
+}
@@ -2,7 +2,7 @@
  * Gamepad.java
  * Define objeto do tipo Gamepad (controle)
  * estende JPanel e adiciona um Keylistener na janela do jogo
- * entrada pelas portas $4016 e $4017 por bits sinalizando  o status de cada botao (1 = pressionado, 0 = liberado)
+ * fornece ao emulador o status de cada botao (1 = pressionado, 0 = liberado); as portas ficam em Controller
  */
 
 
@@ -14,21 +14,28 @@ import java.io.Serializable;
 import javax.swing.JPanel;
 
 @SuppressWarnings("serial")
-class GamePad extends JPanel implements Serializable {
+class GamePad extends JPanel implements Serializable, InputSource {
 
-    private int p1Strobe;   
-    private int p2Strobe;
-    private int readCounter; 		
-    private int buttonFlags;    
+    private volatile int buttonFlags;    
+
+    // teclas associadas a cada botao do controle 1
+    private int keyUp = KeyEvent.VK_UP;
+    private int keyDown = KeyEvent.VK_DOWN;
+    private int keyLeft = KeyEvent.VK_LEFT;
+    private int keyRight = KeyEvent.VK_RIGHT;
+    private int keyA = KeyEvent.VK_Z;
+    private int keyB = KeyEvent.VK_X;
+    private int keySelect = KeyEvent.VK_A;
+    private int keyStart = KeyEvent.VK_S;
     
-    private static final int BUTTON_UP = 0x10;
-    private static final int BUTTON_DOWN = 0x20;
-    private static final int BUTTON_LEFT = 0x40;
-    private static final int BUTTON_RIGHT = 0x80;
-    private static final int BUTTON_A = 1;
-    private static final int BUTTON_B = 2;
-    private static final int BUTTON_SELECT = 4;
-    private static final int BUTTON_START = 8;
+    private static final int BUTTON_UP = Controller.BUTTON_UP;
+    private static final int BUTTON_DOWN = Controller.BUTTON_DOWN;
+    private static final int BUTTON_LEFT = Controller.BUTTON_LEFT;
+    private static final int BUTTON_RIGHT = Controller.BUTTON_RIGHT;
+    private static final int BUTTON_A = Controller.BUTTON_A;
+    private static final int BUTTON_B = Controller.BUTTON_B;
+    private static final int BUTTON_SELECT = Controller.BUTTON_SELECT;
+    private static final int BUTTON_START = Controller.BUTTON_START;
 
 	KeyListener keyListener;
 		
@@ -41,29 +48,29 @@ class GamePad extends JPanel implements Serializable {
 				int key = keyEvent.getKeyCode(); 
 				
 				// bloqueia acionamento simultaneo de 2 botoes de direcao (pode paralisar o sistema)
-				if(key == Globals.P1_UP) {
+				if(key == keyUp) {
 					turnOffButton(BUTTON_DOWN);   
 					turnOnButton(BUTTON_UP);					
 				}
-				else if(key == Globals.P1_DOWN) {
+				else if(key == keyDown) {
 					turnOffButton(BUTTON_UP);
 					turnOnButton(BUTTON_DOWN);
 				}					
-				else if(key == Globals.P1_LEFT) {
+				else if(key == keyLeft) {
 					turnOffButton(BUTTON_RIGHT);   
 					turnOnButton(BUTTON_LEFT);
 				}	
-				else if(key == Globals.P1_RIGHT) {
+				else if(key == keyRight) {
 					turnOffButton(BUTTON_LEFT);   // Pressing Left & Right simultaneously may cause BurgerTime to crash 
 					turnOnButton(BUTTON_RIGHT);
 				}					
-				else if(key == Globals.P1_B)
+				else if(key == keyB)
 					turnOnButton(BUTTON_B);
-				else if(key == Globals.P1_A)
+				else if(key == keyA)
 					turnOnButton(BUTTON_A);
-				else if(key == Globals.P1_SEL)
+				else if(key == keySelect)
 					turnOnButton(BUTTON_SELECT);
-				else if(key == Globals.P1_START)
+				else if(key == keyStart)
 					turnOnButton(BUTTON_START);						
 			}
 
@@ -72,21 +79,21 @@ class GamePad extends JPanel implements Serializable {
 				
 				int key = keyEvent.getKeyCode(); 
 				
-				if(key == Globals.P1_UP)
+				if(key == keyUp)
 					turnOffButton(BUTTON_UP);   				
-				else if(key == Globals.P1_DOWN)
+				else if(key == keyDown)
 					turnOffButton(BUTTON_DOWN);   
-				else if(key == Globals.P1_LEFT)
+				else if(key == keyLeft)
 					turnOffButton(BUTTON_LEFT);   
-				else if(key == Globals.P1_RIGHT)
+				else if(key == keyRight)
 					turnOffButton(BUTTON_RIGHT); 
-				else if(key == Globals.P1_B)
+				else if(key == keyB)
 					turnOffButton(BUTTON_B);			
-				else if(key == Globals.P1_A)
+				else if(key == keyA)
 					turnOffButton(BUTTON_A);			
-				else if(key == Globals.P1_SEL)
+				else if(key == keySelect)
 					turnOffButton(BUTTON_SELECT);			
-				else if(key == Globals.P1_START)
+				else if(key == keyStart)
 					turnOffButton(BUTTON_START);						
 			}
 
@@ -110,27 +117,9 @@ class GamePad extends JPanel implements Serializable {
     	buttonFlags = (buttonFlags & (~(button))) & 0xff;
     }    
 
-    // le o status de cada botao sequencialmente e retorna 1 ou 0
-    public int reg4016Read() {	
-        int temp =  ((buttonFlags >> readCounter) & 1) | 0x40;
-        readCounter++;
-        if (readCounter == 24)
-        	readCounter = 0;
-        return temp;
-    }
-    
-    // ativa porta para leitura quando se escreve 1 seguido de 0
-    public void reg4016Write(int value) {
-    	if (((value & 1) == 0) && ( p1Strobe == 1))   
-    		readCounter = 0;
-        p1Strobe = value & 1;
-    }
-
-    // ativa porta para leitura quando se escreve 1 seguido de 0
-    public void reg4017Write(int value) {
-    	if (((value & 1) == 0) && ( p2Strobe == 1))
-    		readCounter = 0;
-        p2Strobe = value & 1;
+    // status dos botoes lido pelo emulador no inicio de cada quadro
+    public int getButtons(long frame) {
+    	return buttonFlags;
     }
 
 }
\ No newline at end of file
@@ -1,14 +1,13 @@
 
 /**
  * Globals.java
- * Singleton contendo variaveis e constantes de escopo global
+ * Singleton contendo constantes de escopo global
+ * o estado de cada maquina fica nas instancias (Emulator, Jamicom), permitindo varios emuladores na mesma JVM
  * 
  */
 
 package com.jamicom;
 
-import java.awt.event.KeyEvent;
-
 public class Globals {
 	
 	public static final int BANK_1K = 1024;
@@ -24,25 +23,12 @@ public class Globals {
 	public static final int INTERRUPT_MAPPER_IRQ = 4;
     public static final int BASE_NAMETABLE_ADDR   = 0x2000;
 
-	public static int SCR_X = 256;
-	public static int SCR_Y = 224;
+	public static final int SCR_X = 256;
+	public static final int SCR_Y = 224;
 
-	public static int SCR_SCALE = 1;
-	public static boolean INTERPOLATE_GFX = true;
+	public static final boolean INTERPOLATE_GFX = true;
     public static final int PALETTE_SIZE = 64;
 
-	public static int P1_UP = KeyEvent.VK_UP;
-	public static int P1_DOWN = KeyEvent.VK_DOWN;
-	public static int P1_LEFT = KeyEvent.VK_LEFT;
-	public static int P1_RIGHT = KeyEvent.VK_RIGHT;
-	public static int P1_A = KeyEvent.VK_Z;
-	public static int P1_B = KeyEvent.VK_X;
-	public static int P1_SEL = KeyEvent.VK_A;
-	public static int P1_START = KeyEvent.VK_S;
-
-	public static boolean IS_HALT = false;
-	public static boolean EMULA = false;
-
     public static final int NMI_FLAG              = 0x80;
     public static final int SPR0HIT_FLAG 	   	  = 0x40;
     public static final int OVERFLOW_FLAG 		  = 0x20;
@@ -70,14 +56,21 @@ public class Globals {
     public static final int VRAM_READ_CALLER_SPR  = 1;
     public static final int VRAM_READ_CALLER_BG  = 0;
 
-	public static final int SAMPLE_RATE = 48000;
+	public static final int SAMPLE_RATE = 48000;			// taxa padrao de saida do audio
+	public static final int MIN_SAMPLE_RATE = 8000;
+	public static final int MAX_SAMPLE_RATE = 96000;
 	public static final int FRAMEBUFFER_SIZE =  800;
 	public static final int BITS_PER_SAMPLE = 16;
 	public static final int AUDIO_CHANNELS = 1;
 	public static final int CYCLES_PER_LINE = 114;
-	public static final int CYCLES_PER_SAMPLE = 37;
+	public static final int CPU_CLOCK_RATE = 1789773;
 	public static final int APU_FRAME_CYCLES = 7467;
 
+	public static final int DOTS_PER_CPU_CYCLE = 3;
+	public static final int DOTS_PER_SCANLINE = 341;
+	public static final int SCANLINES_PER_FRAME = 262;
+	public static final int VBLANK_SCANLINE = 241;
+
 	public static final int SQUARE1 = 0;
 	public static final int SQUARE2 = 1;
 	public static final int TRIANGLE = 2;
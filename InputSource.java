@@ -0,0 +1,20 @@
+/**
+ * InputSource.java
+ * Origem do estado dos botoes do controle 1 (teclado, gravacao de partida, nenhum)
+ * os bits seguem a ordem de leitura da porta $4016: A, B, Select, Start, cima, baixo, esquerda, direita
+ */
+
+package com.jamicom;
+
+public interface InputSource {
+
+	// consultado no inicio de cada quadro; o valor vale para o quadro inteiro
+	int getButtons(long frame);
+
+	// nenhum botao pressionado
+	InputSource NONE = new InputSource() {
+		public int getButtons(long frame) {
+			return 0;
+		}
+	};
+}
@@ -7,6 +7,7 @@
 package com.jamicom;
 
 import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
@@ -14,6 +15,7 @@ import java.io.File;
 import java.io.IOException;
 
 import javax.swing.ButtonGroup;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
@@ -30,12 +32,13 @@ public class Jamicom extends JFrame{
 	JMenuBar menuBar;
 	GamePad gamepad;
 	Canvas canvas;
+	LineAudioSink audioSink;
 	Cartridge cartridge;
-	Ppu ppu;
-	Cpu cpu;
-	Apu apu;
-	Mapper mapper;
-	Console console;
+	Emulator emulator;
+	FramePacer pacer;
+	private volatile boolean running;	// ativado apos carregar uma ROM valida
+	private int screenScale = 1;
+	private static final int MIN_CORES_AUDIO_THREAD = 4;
 	
 	// criacao da interface grafica
 	public Jamicom() throws IOException { 
@@ -83,6 +86,11 @@ public class Jamicom extends JFrame{
 		configItem01.add(escalaItem03);
 		escalaGroup.add(escalaItem03);
 		escalaItem01.setSelected(true); // botao 1 ativado
+
+		// Config -> Som: desligado, a APU passa ao modo mudo (sem sintese)
+		final JCheckBoxMenuItem somItem = new JCheckBoxMenuItem("Som");
+		somItem.setSelected(true);
+		menuConfig.add(somItem);
 		
 		// adicao de listeners
 		fileItem01.addActionListener(new ActionListener() { // File -> Abrir
@@ -106,7 +114,7 @@ public class Jamicom extends JFrame{
 							
 							// cria objeto tipo cartridge a partir do arquivo de ROM
 							cartridge = new Cartridge(rom);
-							Globals.EMULA = false;
+							running = false;
 							setupSystem(); // se arquivo valido, prossegue com inicializacao do sistema					
 						}
 						else
@@ -124,16 +132,24 @@ public class Jamicom extends JFrame{
 		fileItem02.addActionListener(new ActionListener() { 
 			@Override
 			public void actionPerformed(ActionEvent e) {
+				audioSink.close();
 				System.exit(0);
 			}}
 		);
 
+		// Config -> Som
+		somItem.addActionListener(new ActionListener() { 
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				emulator.setAudioMuted(!somItem.isSelected());
+			}}
+		);
+
 		// Config -> Escala -> 1x
 		escalaItem01.addActionListener(new ActionListener() { 
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				Globals.SCR_SCALE = 1;
-				updateWindow();
+				setScreenScale(1);
 			}}
 		);
 
@@ -141,8 +157,7 @@ public class Jamicom extends JFrame{
 		escalaItem02.addActionListener(new ActionListener() { 
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				Globals.SCR_SCALE = 2;
-				updateWindow();
+				setScreenScale(2);
 			}}
 		);
 		
@@ -150,17 +165,18 @@ public class Jamicom extends JFrame{
 		escalaItem03.addActionListener(new ActionListener() { 
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				Globals.SCR_SCALE = 3;
-				updateWindow();
+				setScreenScale(3);
 			}}
 		);
 		
+		// a janela fornece ao nucleo do emulador a tela, o som e os controles
 		canvas = new Canvas();
 		gamepad = new GamePad();
-		cpu = new Cpu();
-		ppu = new Ppu();
-		apu = new Apu();
-		console = new Console();
+		audioSink = new LineAudioSink();
+		emulator = new Emulator(canvas, audioSink, gamepad);
+		if(Runtime.getRuntime().availableProcessors() >= MIN_CORES_AUDIO_THREAD)
+			emulator.startAudioThread(); // sintese do audio em outro nucleo
+		pacer = new FramePacer(FramePacer.frameRateFor(displayRefreshRate()));
 		getContentPane().add(gamepad);
 		getContentPane().add(canvas);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -169,19 +185,38 @@ public class Jamicom extends JFrame{
 		updateWindow();
 	}
 	
+	// o temporizador dita o ritmo dos quadros; o audio acompanha ajustando a propria taxa
 	public void start() throws InterruptedException {					
-		console.startEmulation();
+		pacer.reset();
+		while(running) {
+			emulator.runFrame();
+			emulator.setAudioRateAdjust(audioSink.getRateAdjust());
+			pacer.waitNextFrame();
+		}
+	}
+
+	// taxa de atualizacao do monitor principal em Hz (0 se desconhecida)
+	static int displayRefreshRate() {
+		if(GraphicsEnvironment.isHeadless())
+			return 0;
+		return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
 	}
 
 	public static void main(String[] args) throws InterruptedException, IOException {
 		Jamicom jamicom = new Jamicom();
 		while(true) {
-			while(Globals.EMULA == false) // aguarda at� usuario selecionar ROM
+			while(jamicom.running == false) // aguarda at� usuario selecionar ROM
 				Thread.sleep(1000);
 			jamicom.start();
 		}
 	}
 	
+	void setScreenScale(int scale) {
+		screenScale = scale;
+		canvas.setScale(scale);
+		updateWindow();
+	}
+
 	// funcao para redimensionar tela do jogo
 	public void updateWindow() {
 		int menuHeight = menuBar.getHeight();
@@ -189,155 +224,19 @@ public class Jamicom extends JFrame{
 			menuHeight = 20;
 		int insets = getInsets().top; // dimensoes extras alem do canvas (bordas, titulo)
 		int extraY = menuHeight + insets;
-		setPreferredSize(new Dimension(Globals.SCR_X * Globals.SCR_SCALE, Globals.SCR_Y * Globals.SCR_SCALE + extraY ));
+		setPreferredSize(new Dimension(Globals.SCR_X * screenScale, Globals.SCR_Y * screenScale + extraY ));
 		pack();
 		setLocationRelativeTo(null);
 		setVisible(true);		
 	}
 
-	// comando para atualizar o canvas (tela), chamado 60 vezes por segundo
-	void drawFrame() throws InterruptedException {
-		canvas.resetDrawBuffer();
-		repaint();
-	}
-	
-	Cartridge getCartridge() {
-		return cartridge;
-	}
-
-	GamePad getGamePad() {
-		return gamepad;
-	}
-
-	public Mapper getMapper() {
-		return this.mapper;
-	}
-
-	public Ppu getPpu() {
-		return this.ppu;
-	}
-
-	public Apu getApu() {
-		return this.apu;
-	}
-
-	public Cpu getCpu() {
-		return this.cpu;
-	}
-
-	public Canvas getCanvas() {
-		return this.canvas;
-	}
-
-	public Console getConsole() {
-		return this.console;
-	}
-
+	// inicializa o emulador com o cartucho carregado; mappers nao suportados usam o mapper basico
 	void setupSystem() throws IOException {
-		/**
-		 * MAPPERS = sistemas de bank switching da placa dos cartuchos que permitia ao NES executar jogos com mais de 65 kilobytes.
-		 * Alguns mappers tamb�m s�o capazes de gerar interrup��es de hardware e outros melhoram o som.
-		 * Cada softhouse produzia seu pr�prio mapper. At� o momento, mais de 100 mappers foram documentados.
-		 * Aqui implementei apenas dois dos mais populares. Quanto mais mappers emulados, mais jogos s�o suportados pelo emulador.
-		 * At� o momento > 600 jogos testados e funcionantes.
-		 */
-    	switch(cartridge.getMapperNum()) { 
-			case   0: mapper = new Mapper(); break; 
-		//	case   1: mapper = new Mapper001(this); break;
-			case   2: mapper = new Mapper002(); break;/*
-    		case   3: mapper = new Mapper003(this); break;
-    		case   4: mapper = new Mapper004(this); break;
-    		case   5: mapper = new Mapper005(this); break;
-
-    		case   7: mapper = new Mapper007(this); break;
-
-    		case   9: mapper = new Mapper009(this); break;
-       		case  10: mapper = new Mapper010(this); break;
-    		case   11: mapper = new Mapper011(this); break;
-
-    		case  16: mapper = new Mapper016(this); break;
-
-    		case  18: mapper = new Mapper018(this); break;
-    		case  19: mapper = new Mapper019(this); break;
-
-    		case  21: mapper = new Mapper021(this); break;
-    		case  22: mapper = new Mapper022(this); break;
-       		case  23: mapper = new Mapper023(this); break;
-
-       		case  25: mapper = new Mapper025(this); break;
-      		case  26: mapper = new Mapper026(this); break;
-      		 
-    		case  32: mapper = new Mapper032(this); break;
-    		case  33: mapper = new Mapper033(this); break;
-    		case  34: mapper = new Mapper034(this); break;
-
-    		case  64: mapper = new Mapper064(this); break;
-
-    		case  66: mapper = new Mapper066(this); break;
-    		case  67: mapper = new Mapper067(this); break;
-    		case  68: mapper = new Mapper068(this); break;
-    		case  69: mapper = new Mapper069(this); break;
-    		case  70: mapper = new Mapper070(this); break;
-    		case  71: mapper = new Mapper071(this); break;
-    		case  72: mapper = new Mapper072(this); break;
-
-    		case  75: mapper = new Mapper075(this); break;
-
-    		case  78: mapper = new Mapper078(this); break;
-    		case  79: mapper = new Mapper079(this); break;
-
-    		case  80: mapper = new Mapper080(this); break;
-
-
-    		case  87: mapper = new Mapper087(this); break; 
-    		case  88: mapper = new Mapper088(this); break; 
-    		case  89: mapper = new Mapper089(this); break; 
-
-    		case  91: mapper = new Mapper091(this); break; 
-
-    		case  94: mapper = new Mapper094(this); break;
-    		case  95: mapper = new Mapper095(this); break;
-
-    		case  97: mapper = new Mapper097(this); break;
-
-    		case 118: mapper = new Mapper118(this); break;
-    		case 119: mapper = new Mapper119(this); break;
-
-    		case 140: mapper = new Mapper140(this); break;
-
-    		case 152: mapper = new Mapper152(this); break;
-
-    		case 154: mapper = new Mapper154(this); break;
-
-    		case 184: mapper = new Mapper184(this); break;
-
-    		case 189: mapper = new Mapper189(this); break;
-
-    		case 206: mapper = new Mapper206(this); break;
-
-    		case 210: mapper = new Mapper210(this); break;
-
-    		case  65: mapper = new Mapper065(this); break;	*/
-    		/*
-
-    		case  72: mapper = new Mapper072(this); break;
-    		case  93: mapper = new Mapper093(this); break; 
-
-    		case 180: mapper = new Mapper180(this); break;
-*/
-    		default : {
-    			String errorMsg = "Erro ! Mapper " + cartridge.getMapperNum() + " nao suportado !";
-    			JOptionPane.showMessageDialog(this, errorMsg, "Jogo n�o suportado", JOptionPane.ERROR_MESSAGE);
-    			mapper = new Mapper();    
-    		}
-    	}
-		console.setup(this);
-		canvas.setup(ppu);
-		cpu.setup(mapper);
-		ppu.setup(this);
-		apu.setup(mapper);
-		mapper.setup(this);
-		cpu.reset(mapper.getRstAddr());
-		Globals.EMULA = true; // se tudo bem sucedido, ativa o loop principal
+		if(!Emulator.isMapperSupported(cartridge.getMapperNum())) {
+			String errorMsg = "Erro ! Mapper " + cartridge.getMapperNum() + " nao suportado !";
+			JOptionPane.showMessageDialog(this, errorMsg, "Jogo n�o suportado", JOptionPane.ERROR_MESSAGE);
+		}
+		emulator.loadCartridge(cartridge);
+		running = true; // se tudo bem sucedido, ativa o loop principal
 	}
 }
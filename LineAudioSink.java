@@ -0,0 +1,156 @@
+/**
+ * LineAudioSink.java
+ * Envia as amostras da APU para a saida de audio da maquina hospedeira (javax.sound)
+ * a thread que sintetiza o audio (a da emulacao, ou a thread "apu" depois de Emulator.startAudioThread) apenas
+ * deposita cada quadro numa fila sem travas (AudioRing);
+ * uma thread de audio dedicada esvazia a fila na linha, cuja escrita bloqueante acompanha o dispositivo
+ * o ritmo da emulacao vem de um temporizador (FramePacer); o desvio entre esse ritmo e o do dispositivo
+ * e corrigido por controle dinamico de taxa: conforme o nivel da fila, getRateAdjust() pede a APU
+ * uma fracao de porcento a mais ou a menos de amostras, mantendo a fila perto da metade sem descartar quadros
+ * a espera com a fila cheia (parkNanos) fica apenas como protecao
+ */
+
+package com.jamicom;
+
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+class LineAudioSink implements AudioSink {
+
+	private static final double MAX_RATE_DELTA = 0.005;			// ajuste maximo da taxa de saida (0,5%)
+	private static final double FILL_SMOOTHING = 0.05;			// peso de cada leitura na media do nivel da fila
+	private static final int CHUNK_SIZE = 512;					// bytes entregues a linha por escrita
+	private static final long WAIT_NANOS = 1000000L;			// espera entre tentativas (1 ms)
+	private static final long WRITE_TIMEOUT_NANOS = 100000000L;	// desiste do quadro se a fila nao esvaziar (100 ms)
+
+	private AudioFormat audioFormat;
+	private SourceDataLine dataLine;
+	private AudioRing ring;
+	private Thread audioThread;
+	private volatile boolean running;
+	private volatile long underruns;	// vezes em que a linha ficou sem amostras (escrito so pela thread de audio)
+	private volatile long overruns;		// quadros descartados com a fila cheia (escrito so pela thread de writeFrame)
+	private double fillLevel = 0.5;		// media do nivel da fila (0 a 1) vista pela thread da emulacao (getRateAdjust)
+	private int startLevel;				// a linha so comeca a tocar com a fila pela metade
+
+	LineAudioSink() {
+		this(Globals.SAMPLE_RATE);
+	}
+
+	// sampleRate deve ser a mesma configurada no Emulator (Emulator.setSampleRate)
+	LineAudioSink(int sampleRate) {
+        // solicita ao sistema interface de audio nas configuracoes pre-definidas
+        audioFormat = new AudioFormat(sampleRate,
+        		Globals.BITS_PER_SAMPLE, Globals.AUDIO_CHANNELS, true, true);
+        int frameBytes = (int) (sampleRate / FramePacer.NES_FRAME_RATE) * 2;
+
+        try {
+        	// abre linha (streaming) para envio das amostras ao audio da maquina hospedeira (buffer de 2 quadros)
+			dataLine = AudioSystem.getSourceDataLine(audioFormat);
+			dataLine.open(audioFormat, frameBytes * 2);
+			dataLine.start();
+		    dataLine.flush();
+
+		}
+
+		catch(LineUnavailableException e) {
+			System.out.println("Audio format not supported.");
+			return;
+		}
+
+		// fila com cerca de 85 ms (potencia de 2: 8192 bytes a 48 Khz, 16 bits)
+		ring = new AudioRing(Integer.highestOneBit(sampleRate / 6) << 1);
+		startLevel = ring.capacity() / 2;
+		running = true;
+		audioThread = new Thread(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, "audio");
+		audioThread.setDaemon(true);
+		audioThread.setPriority(Thread.MAX_PRIORITY);
+		audioThread.start();
+	}
+
+	// chamado ao final de cada quadro pela thread que sintetiza o audio (a da emulacao ou a "apu")
+	public void writeFrame(byte[] samples, int length) {
+		if(dataLine == null)
+			return;
+		int offset = ring.write(samples, 0, length);
+		long deadline = 0;
+		while(offset < length) {
+			// fila cheia: aguarda a thread de audio consumir
+			if(deadline == 0)
+				deadline = System.nanoTime() + WRITE_TIMEOUT_NANOS;
+			else if(System.nanoTime() > deadline) {
+				overruns++;
+				return;
+			}
+			LockSupport.parkNanos(WAIT_NANOS);
+			offset += ring.write(samples, offset, length - offset);
+		}
+	}
+
+	/* controle dinamico de taxa, chamado pela thread da emulacao a cada quadro
+	 * fila acima da metade: menos amostras por quadro; abaixo: mais (no maximo MAX_RATE_DELTA)
+	 * sem dispositivo de audio retorna 1.0 (taxa nominal)
+	 */
+	double getRateAdjust() {
+		if(dataLine == null)
+			return 1.0;
+		double fill = (double) ring.available() / ring.capacity();
+		fillLevel += (fill - fillLevel) * FILL_SMOOTHING;
+		return 1.0 - MAX_RATE_DELTA * (2.0 * fillLevel - 1.0);
+	}
+
+	// laco da thread de audio: passa o conteudo da fila para a linha
+	private void drain() {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		boolean starving = true;	// no inicio (e apos esgotar) aguarda a fila encher ate startLevel
+		while(running) {
+			if(starving && ring.available() < startLevel) {
+				LockSupport.parkNanos(WAIT_NANOS);
+				continue;
+			}
+			int count = ring.read(chunk, 0, CHUNK_SIZE);
+			if(count > 0) {
+				dataLine.write(chunk, 0, count);	// bloqueia ate haver espaco na linha
+				starving = false;
+			}
+			else {
+				// fila vazia com a linha quase esgotada: o dispositivo vai tocar silencio
+				if(dataLine.getBufferSize() - dataLine.available() < CHUNK_SIZE) {
+					underruns++;
+					starving = true;
+				}
+				LockSupport.parkNanos(WAIT_NANOS);
+			}
+		}
+	}
+
+	long getUnderruns() {
+		return underruns;
+	}
+
+	long getOverruns() {
+		return overruns;
+	}
+
+	// encerra a thread de audio e libera a linha
+	void close() {
+		if(dataLine == null)
+			return;
+		running = false;
+		try {
+			audioThread.join(WRITE_TIMEOUT_NANOS / 1000000L);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		dataLine.close();
+	}
+}
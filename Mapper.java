@@ -12,8 +12,8 @@ class Mapper {
 	private Apu apu;
 	private  Console console;
 	protected  Cartridge cartridge;
-	private  GamePad gamepad;
-	private Canvas canvas;
+	private  Controller controller;
+	private Screen screen;
 	private Cpu cpu;
 	private int interruptSignal;
 	private boolean nmiDelayFlag;
@@ -38,22 +38,45 @@ class Mapper {
     int patternTable1Offset;
     private boolean updateDmaCycles;
     private boolean updateDmcCycles;
+
+    /* tabela de paginas da CPU: o espaco de 64 KB e dividido em 64 paginas de 1 KB
+     * cada pagina aponta para um array (RAM, PRG) mais o deslocamento do banco,
+     * ou e nula quando a faixa pertence aos registradores (PPU, APU, controles)
+     * os deslocamentos ja descontam o endereco base da pagina: memoria[offset + addr]
+     */
+    static final int PAGE_SHIFT = 10;
+    private static final int PAGE_COUNT = 64;
+    private int[][] readPages;
+    private int[] readPageOffsets;
+    private int[][] writePages;
+    private int[] writePageOffsets;
+    private int[] prgRom;			// memoria de programa mapeada por mapPrgRomPages (somente leitura)
     
 	Mapper() {
         nt0Offset = 0;
         patternTable0Offset = 0;
 		patternTable1Offset = 4096;
 	    prgBank0Ptr = 0;
+	    readPages = new int[PAGE_COUNT][];
+	    readPageOffsets = new int[PAGE_COUNT];
+	    writePages = new int[PAGE_COUNT][];
+	    writePageOffsets = new int[PAGE_COUNT];
 	}
 	
-	public void setup(Jamicom joro) {
-    	this.ppu = joro.getPpu();
-    	this.cpu = joro.getCpu();
-    	this.canvas = joro.getCanvas();
-    	this.console = joro.getConsole();
-    	this.apu = joro.getApu();
-    	this.gamepad = joro.getGamePad();
-    	this.cartridge = joro.getCartridge();
+	public void setup(Emulator emulator) {
+    	this.ppu = emulator.getPpu();
+    	this.cpu = emulator.getCpu();
+    	this.screen = emulator.getScreen();
+    	this.console = emulator.getConsole();
+    	this.apu = emulator.getApu();
+    	this.controller = emulator.getController();
+    	this.cartridge = emulator.getCartridge();
+    	
+    	// RAM do sistema (2 KB) espelhada 4 vezes entre $0000 e $1FFF
+    	for (int addr = 0; addr < 0x2000; addr += Globals.BANK_2K) {
+    		mapReadPages(addr, Globals.BANK_2K, console.getSystemRam(), 0);
+    		mapWritePages(addr, Globals.BANK_2K, console.getSystemRam(), 0);
+    	}
     	setCartridge(this.cartridge);
 	}
 
@@ -85,8 +108,61 @@ class Mapper {
 	    	prgBank1Ptr = 0;
 	    else
 	    	prgBank1Ptr = Globals.BANK_16K;
+	    mapPrgPages();
     }    
+
+    // aponta as paginas de $8000-$FFFF para os bancos de programa atuais; chamado a cada troca de banco
+    protected void mapPrgPages() {
+    	mapPrgRomPages(0x8000, Globals.BANK_16K, cartridge.getPrg(), prgBank0Ptr);
+    	mapPrgRomPages(0xC000, Globals.BANK_16K, cartridge.getPrg(), prgBank1Ptr);
+    }
+
+    // como mapReadPages, para a PRG ROM: como ela nao muda, a CPU pode guardar suas instrucoes ja decodificadas
+    protected void mapPrgRomPages(int addr, int size, int[] rom, int offset) {
+    	prgRom = rom;
+    	mapReadPages(addr, size, rom, offset);
+    }
+
+    // associa uma faixa de enderecos da CPU (multiplo de 1 KB) a um array de memoria
+    protected void mapReadPages(int addr, int size, int[] memory, int offset) {
+    	for (int n = 0; n < size; n += Globals.BANK_1K) {
+    		readPages[(addr + n) >> PAGE_SHIFT] = memory;
+    		readPageOffsets[(addr + n) >> PAGE_SHIFT] = offset - addr;
+    	}
+    	if (cpu != null)
+    		cpu.invalidateCodePage();
+    }
+
+    protected void mapWritePages(int addr, int size, int[] memory, int offset) {
+    	for (int n = 0; n < size; n += Globals.BANK_1K) {
+    		writePages[(addr + n) >> PAGE_SHIFT] = memory;
+    		writePageOffsets[(addr + n) >> PAGE_SHIFT] = offset - addr;
+    	}
+    }
     
+    // PRG ROM vista na pagina do endereco, ou null se a pagina for RAM, registradores ou outra memoria
+    int[] getPrgRomPage(int addr) {
+    	int[] memory = readPages[addr >> PAGE_SHIFT];
+    	return memory == prgRom ? memory : null;
+    }
+
+    int getReadPageOffset(int addr) {
+    	return readPageOffsets[addr >> PAGE_SHIFT];
+    }
+
+    // paginas de leitura e escrita diretas (null = acesso pelos registradores)
+    int[] getReadPage(int addr) {
+    	return readPages[addr >> PAGE_SHIFT];
+    }
+
+    int[] getWritePage(int addr) {
+    	return writePages[addr >> PAGE_SHIFT];
+    }
+
+    int getWritePageOffset(int addr) {
+    	return writePageOffsets[addr >> PAGE_SHIFT];
+    }
+
     // retornam endereços dos vetores de interrupcao da CPU
 	int getRstAddr() {
 		return ioRead(0xFFFC) | (ioRead(0xFFFD) << 8);
@@ -124,6 +200,13 @@ class Mapper {
 	// gerencia manejo de interrupcoes
     void setInterruptSignal(int losflagsRegister) {	
     	interruptSignal |= losflagsRegister;
+    	console.requestInterruptPoll();
+    }
+
+    // pede ao console que verifique as interrupcoes antes da proxima instrucao (apos CLI, SEI, PLP, RTI)
+    void requestInterruptPoll() {
+    	if(interruptSignal != 0)
+    		console.requestInterruptPoll();
     }
 
     void clearInterruptSignal(int losflagsRegister) {   	
@@ -172,11 +255,28 @@ class Mapper {
 	
 	/* gerencia leitura de memoria RAM e aos registradores do sistema
 	 * a comunicação da CPU com a PPU, APU e portas é feita por registradores mapeados na memoria principal do sistema
+	 * RAM e PRG sao lidas direto pela tabela de paginas; somente paginas nulas seguem para os registradores
 	 */
 	int ioRead(int addr) {	
-		if(addr < 0x2000)
-	    	return 	console.systemRamRead(addr & 0x7ff);
-		else if ( (addr >= 0x2000) && (addr < 0x4000) ) { // PPU Registers
+		addr &= 0xFFFF;
+		int[] memory = readPages[addr >> PAGE_SHIFT];
+		if(memory != null)
+			return memory[readPageOffsets[addr >> PAGE_SHIFT] + addr];
+		return registerRead(addr);
+	}
+
+	/* atualiza a PPU ate o inicio da instrucao atual antes de qualquer alteracao visivel por ela
+	 * (registradores $2000-$3FFF, DMA de sprites); mappers que trocam bancos de CHR ou nametables
+	 * devem chamar antes de alterar o mapeamento
+	 */
+	protected void syncPpu() {
+		ppu.catchUp(console.getMasterClock());
+	}
+
+	// leitura dos registradores mapeados (paginas sem memoria associada)
+	int registerRead(int addr) {
+		if ( (addr >= 0x2000) && (addr < 0x4000) ) { // PPU Registers
+			syncPpu();
 
 			switch (addr % 8) {
 
@@ -189,7 +289,7 @@ class Mapper {
 	                ppu.turnOffFlags(Globals.NMI_FLAG);
 	                isSecondWrite = false;
 	                int laSoma =  ppu.lineDot + (cpu.currentOpCycles*3);
-	                if( console.scanline == 240 && (laSoma > 341)) 
+	                if( console.getCurrentScanline() == 240 && (laSoma > 341)) 
 	                	cpu.setSuprimeNmi(true);
 	                return temp;
 	            }
@@ -206,7 +306,7 @@ class Mapper {
 	                int tempor;
 	                int lv = ppu.getLoopyV();   
 	                if (lv >= 0x3F00)
-	                	tempor = canvas.getPaletteMirror(lv & 0x1F);              
+	                	tempor = screen.getPaletteMirror(lv & 0x1F);              
 	                else {
 	                    tempor = bufferReg2007;
 	                    ppu.vramReadCaller = Globals.VRAM_READ_CALLER_SPR;
@@ -226,25 +326,32 @@ class Mapper {
 	        		return 0xff;
 	        }    
 	    }	    
-		else if(addr == 0x4015)
+		else if(addr == 0x4015) {
+			apu.catchUp(console.getMasterClock());
 			return apu.reg4015Read();    
+		}
 	    else if (addr == 0x4016)// PORTAS DE LEITURAS DOS CONTROLES
-	    	return gamepad.reg4016Read();
+	    	return controller.reg4016Read();
 	    else if(addr == 0x4017)
 	    	return 0x480;
-	    else if ((addr >= 0x8000) && (addr < 0xC000))
-	        return cartridge.prgRead(addr - 0x8000 + prgBank0Ptr);
-	    else if ((addr >= 0xC000) && (addr < 0x10000))
-	    	return cartridge.prgRead(addr - 0xC000 + prgBank1Ptr);
 	    else
 	    	return 0;	    	
 	}
 	
 	// gerencia escrita de memoria RAM e aos registradores do sistema
 	 void ioWrite(int addr, int value) {
-	    if (addr < 0x2000)
-	        console.systemRamWrite(addr & 0x7ff, value);
-	    else if ((addr >= 0x2000) && (addr < 0x4000)) {	// PPU Registers
+		addr &= 0xFFFF;
+		int[] memory = writePages[addr >> PAGE_SHIFT];
+		if(memory != null)
+			memory[writePageOffsets[addr >> PAGE_SHIFT] + addr] = value;
+		else
+			registerWrite(addr, value);
+	}
+
+	// escrita aos registradores mapeados; os mappers sobrescrevem para tratar a troca de bancos
+	 void registerWrite(int addr, int value) {
+	    if ((addr >= 0x2000) && (addr < 0x4000)) {	// PPU Registers
+	    	syncPpu();
 	    	switch (addr % 8) {
 	    		case 0: {// REGISTER $2000
 	    			if(console.isVBlankPeriod() && value > 0x7f && ppu.flagIsSet(Globals.NMI_FLAG) && nmiEnable == false) {
@@ -261,14 +368,14 @@ class Mapper {
 
 	            	switch((value & 0xe0)>>5) {	// color intensity bits
 	            		case 0:
-	            			canvas.setNormalPalette();
+	            			screen.setNormalPalette();
 	            			break;
 	            		case 7:
-	            			canvas.setRGBPalette();
+	            			screen.setRGBPalette();
 	            			break;
 	            	}
 	                if ((value & 1) == 1)
-	                	canvas.setGrayPalette();
+	                	screen.setGrayPalette();
 	                ppu.reg2001Write(value);
 	                break;
 	            }
@@ -326,60 +433,33 @@ class Mapper {
 	            }
 	        }
 	    }
-	    else if (addr == 0x4000) // REGISTRADORES DA APU
-	    	apu.sqrRegister0Write(Globals.SQUARE1, value);
-	    else if (addr == 0x4001)
-	    	apu.sqrRegister1Write(Globals.SQUARE1, value);	    
-	    else if (addr == 0x4002)
-	    	apu.sqrRegister2Write(Globals.SQUARE1, value);	    
-	    else if (addr == 0x4003)
-	    	apu.sqrRegister3Write(Globals.SQUARE1, value);
-	    else if (addr == 0x4004)
-	    	apu.sqrRegister0Write(Globals.SQUARE2, value);
-	    else if (addr == 0x4005)
-	    	apu.sqrRegister1Write(Globals.SQUARE2, value);	    
-	    else if (addr == 0x4006)
-	    	apu.sqrRegister2Write(Globals.SQUARE2, value);	    
-	    else if (addr == 0x4007)	    	
-	    	apu.sqrRegister3Write(Globals.SQUARE2, value);
-	    else if (addr == 0x4008)
-	    	apu.trgRegister0Write(value);
-	    else if (addr == 0x400A) 
-	    	apu.trgRegister1Write(value);	    
-	    else if (addr == 0x400B)
-	    	apu.trgRegister2Write(value);	    
-	    else if (addr == 0x400C)
-	    	apu.noiseRegister0Write(value);	    
-	    else if (addr == 0x400E)
-	    	apu.noiseRegister1Write(value);	    
-	    else if (addr == 0x400F)
-	    	apu.noiseRegister2Write(value);	    
-	    else if (addr == 0x4010) {
-	    	apu.dmcRegister0Write(value);	 
-	    }	    
-	    else if (addr == 0x4011)
-	    	apu.dmcRegister1Write(value);
-	    else if (addr == 0x4012) 
-	    	apu.dmcRegister2Write( value);
-    	else if (addr == 0x4013)
-	    	apu.dmcRegister3Write(value);
-	    else if (addr == 0x4014) {    // SPRITE DMA	    
+	    else if ((addr >= 0x4000) && (addr < 0x4018)) {
+	    	// a APU e sincronizada ate o inicio da instrucao antes da escrita e reagenda seus eventos depois
+	    	apu.catchUp(console.getMasterClock());
+	    	apuRegisterWrite(addr, value);
+	    	apu.scheduleEvents();
+	    	cpu.endRun();		// os eventos da APU podem ter sido antecipados
+	    }
+	}
+
+	// escrita aos registradores da APU, DMA de sprites e portas dos controles ($4000 - $4017)
+	private void apuRegisterWrite(int addr, int value) {
+	    if (addr == 0x4014) {    // SPRITE DMA	    
+	    	syncPpu();
 	        reg4014 = value * 0x100;
 	        for (int n = 0; n < 0x100; n++) {
 	           ppu.sprOam[(reg2003 + n) & 0xFF] = ioRead(reg4014 + n);	
 	        }
 	        updateDmaCycles = true;	
 	    }	    
-	    else if (addr == 0x4015) {
-	    	apu.toggleChannel(value);
-	    	apu.dmcIrqFlag = 0;
-	  		clearInterruptSignal(Globals.INTERRUPT_DMC_IRQ);
-	    }	    
 	    else if (addr == 0x4016)  // LATCH CONTROL 1
-	    	gamepad.reg4016Write(value);
-	    else if (addr == 0x4017) {   // LATCH CONTROL 2
-	    	gamepad.reg4017Write(value);
-	    	apu.reg4017Write(value);
+	    	controller.reg4016Write(value);
+	    else {
+	    	if (addr == 0x4017)   // LATCH CONTROL 2
+	    		controller.reg4017Write(value);
+	    	apu.registerWrite(addr, value);	// REGISTRADORES DA APU
+	    	if (addr == 0x4015)
+	    		clearInterruptSignal(Globals.INTERRUPT_DMC_IRQ);
 	    }
 	}
 
@@ -410,9 +490,25 @@ class Mapper {
         else if ((addr >= 0x3C00) && (addr < 0x3F00))
         	nameTableData[addr - 0x3C00 + nt3Offset] = value;
         else if ((addr >= 0x3F00) && (addr < 0x4000))
-        	ppu.palettesWrite(canvas.getPaletteMirror(addr & 0x1F), value & 0x3f);
+        	ppu.palettesWrite(screen.getPaletteMirror(addr & 0x1F), value & 0x3f);
     }
     
+	 // leitura de uma linha de tile pre-decodificada da tabela de padroes ($0000-$1FFF)
+	 int patternRowRead(int addr) {
+		if(addr < 0x1000)
+			return cartridge.chrRowRead((addr%4096) + patternTable0Offset);
+		else
+			return cartridge.chrRowRead((addr%4096) + patternTable1Offset);
+	 }
+
+	 // mesma linha espelhada horizontalmente (pixel mais a esquerda nos bits 0-1)
+	 int patternRowReadReversed(int addr) {
+		if(addr < 0x1000)
+			return cartridge.chrRowReadReversed((addr%4096) + patternTable0Offset);
+		else
+			return cartridge.chrRowReadReversed((addr%4096) + patternTable1Offset);
+	 }
+	 
 	 // gerencia leitura a memoria de video da PPU
 	 int vramRead(int addr) {
 		if(addr < 0x1000)
@@ -436,12 +532,13 @@ class Mapper {
 		else if ((addr >= 0x3C00) && (addr < 0x3F00))
 			return nameTableData[addr - 0x3C00 + nt3Offset];
 		else if ((addr >= 0x3F00) && (addr < 0x4000))
-			return ppu.palettesRead(canvas.getPaletteMirror(addr & 0x1F));
+			return ppu.palettesRead(screen.getPaletteMirror(addr & 0x1F));
 		else
 			return 0xff;
 	}
 	
-	void update(int losCiclos, int scanlineNum) {	// para MMC, VRC y octros
+	// disparado pela agenda (Scheduler.EVENT_MAPPER_IRQ) para mappers com contador de IRQ (MMC, VRC y octros)
+	void irqEvent() {
 	
 	}	
 }
@@ -458,14 +555,17 @@ class Mapper002 extends Mapper {
     	super.setCartridge(cartridge);
 		prgMask = cartridge.getNumPrg() -1;
 	    prgBank1Ptr = (cartridge.getNumPrg() -1) * Globals.BANK_16K;	    	    	
+	    mapPrgPages();
     }
     
 	@Override
-	 void ioWrite(int addr, int balor) {
-	    if ((addr >= 0x8000) && (addr < 0x10000))
+	 void registerWrite(int addr, int balor) {
+	    if (addr >= 0x8000) {
 	    	prgBank0Ptr = Globals.BANK_16K * (balor & prgMask);
+	    	mapPrgPages();
+	    }
 	    else
-	    	super.ioWrite(addr, balor);
+	    	super.registerWrite(addr, balor);
 	}
 }
 
@@ -0,0 +1,65 @@
+/**
+ * MovieInput.java
+ * Reproduz os botoes gravados em um arquivo de partida no formato FM2 (texto, um quadro por linha)
+ * linhas de quadro: |comandos|controle1|controle2|...| onde controle1 tem 8 caracteres na ordem RLDUTSBA
+ * (direita, esquerda, baixo, cima, start, select, B, A); '.' ou espaco = solto, qualquer outro = pressionado
+ * as demais linhas (cabecalho "chave valor") sao ignoradas; apos o fim da gravacao nenhum botao e pressionado
+ */
+
+package com.jamicom;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+class MovieInput implements InputSource {
+
+	private int[] frameButtons;
+	private int frameCount;
+
+	MovieInput(File movieFile) throws IOException {
+		frameButtons = new int[1024];
+		BufferedReader reader = new BufferedReader(new FileReader(movieFile));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.startsWith("|"))
+					continue;
+				if (frameCount == frameButtons.length) {
+					int[] larger = new int[frameButtons.length * 2];
+					System.arraycopy(frameButtons, 0, larger, 0, frameCount);
+					frameButtons = larger;
+				}
+				frameButtons[frameCount++] = parsePort(line);
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	// converte o campo do controle 1 (segundo campo da linha) nos bits da porta $4016
+	private static int parsePort(String line) {
+		int start = line.indexOf('|', 1) + 1;
+		int buttons = 0;
+		for (int n = 0; n < 8 && start + n < line.length(); n++) {
+			char c = line.charAt(start + n);
+			if (c == '|')
+				break;
+			if (c != '.' && c != ' ')
+				buttons |= 0x80 >> n;
+		}
+		return buttons;
+	}
+
+	public int getButtons(long frame) {
+		if (frame < 0 || frame >= frameCount)
+			return 0;
+		return frameButtons[(int) frame];
+	}
+
+	int getFrameCount() {
+		return frameCount;
+	}
+}
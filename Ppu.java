@@ -34,8 +34,7 @@ public class Ppu {
     private int bgColunaDrawCursor;
     private int renderBufferCursor;           
     private int[] drawBuffer;      
-    private int bgPatternByte1;
-    private int bgPatternByte2;
+    private int bgPatternRow;
     private int attrByte;
     private int attrShift;
     private int loopyV;
@@ -43,14 +42,11 @@ public class Ppu {
     private int bgTileAddr;
     private int bgTileColOffset;
     
-    private int sprPatternByte1;
-    private int sprPatternByte2;
+    private int sprPatternRow;
     private int sprPatternFinal;
     private int sprFirstLine;
     private int sprTileNum;
     private int sprTileAddr;
-    private int sprDirection;
-    private int sprTileColOffset;
     private int sprTileLinOffset;
     private int spriteCount;
     private int sprPixelsToWrite;
@@ -59,13 +55,15 @@ public class Ppu {
     private boolean sprHitFrameFlag;             
     private int[] palettes;              
     public int lineDot;
-    public int ciclosSobrando;
+    private int scanline;
+    private long ppuClock;		// relogio mestre ate onde a PPU ja renderizou (pontos)
     int spr0FlagDelay;
     int vramReadCaller;
     boolean fue255;
     boolean samePatternTable;
     private Mapper mapper;
     private Cpu cpu;
+    private Screen screen;
 
     public Ppu() {
     	
@@ -76,9 +74,57 @@ public class Ppu {
 		palettes = new int[28];
     }
 
-    public void setup(Jamicom jamicom) {
-    	this.mapper = jamicom.getMapper();
-    	this.cpu = jamicom.getCpu();
+    public void setup(Emulator emulator) {
+    	this.mapper = emulator.getMapper();
+    	this.cpu = emulator.getCpu();
+    	this.screen = emulator.getScreen();
+    	ppuClock = 0;
+    	scanline = 0;
+    	lineDot = 0;
+    }
+
+    /* sincroniza a PPU ate o relogio mestre informado, renderizando de uma vez os pontos pendentes de cada linha
+     * chamado somente quando a CPU acessa $2000-$3FFF, no DMA de sprites, na troca de bancos de CHR/nametables e no fim do quadro
+     */
+    void catchUp(long masterClock) {
+    	while (ppuClock < masterClock) {
+    		if (lineDot == 0)
+    			beginScanline();
+    		int dots = (int) Math.min(masterClock - ppuClock, Globals.DOTS_PER_SCANLINE - lineDot);
+    		renderScanline(dots, scanline);
+    		ppuClock += dots;
+    		if (lineDot == Globals.DOTS_PER_SCANLINE)
+    			endScanline();
+    	}
+    }
+
+    // inicio da linha: calcula sprites e cenario das linhas visiveis
+    private void beginScanline() {
+    	if (scanline < 240) { // visible
+    		
+    		// calcula uma linha de elementos do jogo (sprites)
+    		if (sprRenderEnabled)
+    			renderSprites(scanline);
+            
+    		// calcula uma linha de cenario (background)
+    		if (bgRenderEnabled)
+    			updateBgLine(scanline);
+    	}
+    }
+
+    // fim da linha: converte a linha na tela com a paleta atual e passa para a seguinte
+    private void endScanline() {
+    	if ((scanline > 7) && (scanline < 232))
+    		screen.drawScanline(scanline);
+    	lineDot = 0;
+    	if (++scanline == Globals.SCANLINES_PER_FRAME) {
+    		scanline = 0;
+    		resetRenderBuffer();
+    	}
+    }
+
+    int getScanline() {
+    	return scanline;
     }
 
     // a PPU tem um registrador de status proprio
@@ -232,28 +278,22 @@ public class Ppu {
                 
                 vramReadCaller = Globals.VRAM_READ_CALLER_SPR;
                 
-                // obtem o caracter (pattern) do sprite na memoria de caracteres
-                sprPatternByte1 = mapper.vramRead(sprTileAddr);
-                sprPatternByte2 = mapper.vramRead(sprTileAddr + 8);
+                // obtem a linha do caracter (pattern) ja decodificada, na ordem em que sera desenhada
+                if (getSprFlipXBit(spriteIndex))	// Si Flip X
+                    sprPatternRow = mapper.patternRowRead(sprTileAddr);
+                else
+                    sprPatternRow = mapper.patternRowReadReversed(sprTileAddr);
 
                 sprPixelsToWrite = getSprPixelsToWrite(spriteIndex);
 
                 // posiciona o cursor na coordenada inicial para desenho
                 renderBufferCursor = (currScanline * Globals.DRAWBUFFER_WIDTH) + sprOam[spriteIndex + 3];
-
-                if (getSprFlipXBit(spriteIndex)) {	// Si Flip X
-                    sprDirection = 1;
-                    sprTileColOffset = 0;
-                }
-                else {
-                    sprDirection = -1;
-                    sprTileColOffset = 7;
-                }
                 
                 // finalmente, desenha o sprite selecionado
                 for (int pixelIndex = 0; pixelIndex < sprPixelsToWrite; pixelIndex++) {
                 	// obtem o caracter (pattern)
-                    sprPatternFinal = ((sprPatternByte1 >> sprTileColOffset) & 1) | (((sprPatternByte2 >> sprTileColOffset) & 1) << 1);
+                    sprPatternFinal = sprPatternRow & Globals.PIXEL_OPAQUE_MASK;
+                    sprPatternRow >>= 2;
 
                     // caso caracter utilize o indice 0 da paleta � considerado transparente e NAO � desenhado
                     if ((sprPatternFinal & Globals.PIXEL_OPAQUE_MASK) == 0)
@@ -268,14 +308,23 @@ public class Ppu {
                     	drawBuffer[renderBufferCursor++] = Globals.SPR_COLLISION_BIT | sprPatternFinal |
                             ((sprOam[spriteIndex + 2] & Globals.PIXEL_OPAQUE_MASK) << 2) | sprZeroBit | sprPriorityBit;
                     }
-                    sprTileColOffset += sprDirection;
                     
                 }
             }
         }
     }
 
-    // renderiza X pixels (definidos por ciclosToRun) no cen�rio na linha atual
+    // inicio do VBlank (linha 241, ponto 1), disparado pela agenda de eventos do console
+    void startVBlank() {
+		turnOnFlags(Globals.NMI_FLAG);
+		if (mapper.getNmiEnableFlag()) {
+			if(cpu.getSuprimeNmi() == false)
+				mapper.setInterruptSignal(Globals.INTERRUPT_NMI);
+		}
+		cpu.setSuprimeNmi(false);
+    }
+
+    // renderiza X pixels (definidos por ciclosToRun, sem ultrapassar o fim da linha) no cen�rio na linha atual
     void renderScanline(int ciclosToRun, int scanlineNum) {
         int bgPattern;        
         for (int pixelIndex = 1; pixelIndex <= ciclosToRun; pixelIndex++) {
@@ -286,14 +335,6 @@ public class Ppu {
         	}
         	
         	// calcula situacoes especiais de acordo com a posicao horizontal do cursor para calculo de logica
-        	if(lineDot == 1 && scanlineNum == 241) {
-        		turnOnFlags(Globals.NMI_FLAG);
-        		if (mapper.getNmiEnableFlag()) {
-        			if(cpu.getSuprimeNmi() == false)
-        				mapper.setInterruptSignal(Globals.INTERRUPT_NMI);
-        		}
-				cpu.setSuprimeNmi(false);
-        	}
         	if(lineDot == 1 && scanlineNum == 261) {
             	resetFlags();
     	   		sprHitFrameFlag = false;
@@ -327,7 +368,7 @@ public class Ppu {
             	if(bgRenderEnabled) {
             		
             		// obter o caracter respectivo do elemento do cenario da coluna atual
-	            	bgPattern = ((bgPatternByte1 >> bgTileColOffset) & 1) | (((bgPatternByte2 >> bgTileColOffset) & 1) << 1);
+	            	bgPattern = (bgPatternRow >> (bgTileColOffset << 1)) & Globals.PIXEL_OPAQUE_MASK;
 	            	
 	            	// se coluna esquerda desativada nao desenha cenario
 	                if (bgPattern == 0 || (bgColunaDrawCursor < 8 && bgLeftColumnEnabled == false))
@@ -367,8 +408,7 @@ public class Ppu {
 	                    vramReadCaller = Globals.VRAM_READ_CALLER_BG;
 	                    bgTile = mapper.vramRead(Globals.BASE_NAMETABLE_ADDR | (loopyV & 0xFFF));
 	                    bgTileAddr = baseBgPatternIndex + 16 * bgTile + fineY;
-	                    bgPatternByte1 = mapper.vramRead(bgTileAddr);
-	                    bgPatternByte2 = mapper.vramRead(bgTileAddr + 8);
+	                    bgPatternRow = mapper.patternRowRead(bgTileAddr);
 	                    bgTileColOffset = 7;
 	                    attrByte = mapper.vramRead(0x23C0 | (loopyV & 0x0C00) |
 	                        ((loopyV >> 4) & 0x38) | ((loopyV >> 2) & 0x07));
@@ -378,12 +418,6 @@ public class Ppu {
             }
             bgColunaDrawCursor++;
         	lineDot++;
-        	if(lineDot > 340) {
-        		ciclosSobrando = ciclosToRun - pixelIndex;
-        		lineDot-=341;
-        		return;
-        	}
-            ciclosSobrando = ciclosToRun - pixelIndex;
         }
     }
 
@@ -394,8 +428,7 @@ public class Ppu {
         bgTile = mapper.vramRead(Globals.BASE_NAMETABLE_ADDR | (loopyV & 0xFFF));
         fineY = (loopyV & 0x7000) >> 12;
         bgTileAddr = baseBgPatternIndex + 16 * bgTile + fineY;
-        bgPatternByte1 = mapper.vramRead(bgTileAddr);
-        bgPatternByte2 = mapper.vramRead(bgTileAddr + 8);
+        bgPatternRow = mapper.patternRowRead(bgTileAddr);
         bgTileColOffset = fineX == 0 ? 7 : 7 - fineX;
         attrByte = mapper.vramRead(0x23C0 | (loopyV & 0x0C00) |
             ((loopyV >> 4) & 0x38) | ((loopyV >> 2) & 0x07));
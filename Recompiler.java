@@ -0,0 +1,826 @@
+/**
+ * Recompiler.java
+ * Camada opcional de recompilacao dinamica da CPU (desligada por padrao, ver Emulator.setRecompilerEnabled)
+ * conta as execucoes de cada endereco inicial na PRG ROM; quando um endereco fica quente, o bloco basico que comeca
+ * nele e traduzido para bytecode numa classe oculta (Lookup.defineHiddenClass, aninhada na Cpu) que executa o bloco
+ * inteiro com os registradores em variaveis locais da JVM e devolve os ciclos gastos
+ * somente entram no bloco instrucoes sem efeito fora da CPU e da RAM interna: acesso a registradores (PPU, APU, mapper),
+ * modos com endereco variavel fora da pagina zero, pilha do status e interrupcoes (BRK, RTI, CLI, SEI, PHP, PLP)
+ * encerram o bloco antes e seguem pelo interpretador, que tambem trata as interrupcoes entre as execucoes de run()
+ * o bloco so e executado se run() executaria todas as suas instrucoes (orcamento acima dos ciclos ate a ultima),
+ * logo os acessos, ciclos e instantes vistos pelo resto do console sao os mesmos do interpretador
+ * os blocos sao indexados pela posicao na PRG ROM e pelo endereco da CPU para o qual foram gerados (lista por posicao):
+ * um banco visto em mais de uma janela do mapper (ex.: mapper 2) tem um bloco para cada endereco, gerado uma vez so
+ * cada bloco e uma classe oculta; ao chegar a MAX_CACHED_BLOCKS a cache inteira e descartada (as classes sem
+ * referencia podem ser descarregadas) e os blocos quentes sao gerados de novo
+ */
+
+package com.jamicom;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+class Recompiler {
+
+	// codigo gerado de um bloco: executa todas as instrucoes e devolve os ciclos gastos
+	interface Block {
+		int execute(Cpu cpu, int[] ram);
+	}
+
+	// bloco gerado (code == null: o endereco nao forma um bloco util e fica com o interpretador)
+	private static final class CompiledBlock {
+		final Block code;
+		final int address;
+		final int guardCycles;		// ciclos antes da ultima instrucao: o orcamento de run() deve passar disso
+		CompiledBlock next;			// outro endereco da CPU para a mesma posicao da PRG ROM
+
+		CompiledBlock(Block code, int address, int guardCycles) {
+			this.code = code;
+			this.address = address;
+			this.guardCycles = guardCycles;
+		}
+	}
+
+	private static final int HOT_THRESHOLD = 64;			// execucoes antes de gerar o bloco
+	private static final int MIN_BLOCK_INSTRUCTIONS = 2;
+	private static final int MAX_BLOCK_INSTRUCTIONS = 64;
+	private static final int MAX_CACHED_BLOCKS = 4096;		// classes ocultas vivas antes de descartar a cache
+	private static final int PAGE_MASK = (1 << Mapper.PAGE_SHIFT) - 1;
+
+	// modos de enderecamento
+	private static final int IMP = 1;
+	private static final int ACC = 2;
+	private static final int IMM = 3;
+	private static final int ZP = 4;
+	private static final int ZPX = 5;
+	private static final int ZPY = 6;
+	private static final int ABS = 7;
+	private static final int REL = 8;
+	private static final int JUMP = 9;
+
+	// operacoes traduzidas
+	private static final int LDA = 1, LDX = 2, LDY = 3, STA = 4, STX = 5, STY = 6;
+	private static final int ADC = 7, SBC = 8, AND = 9, ORA = 10, EOR = 11, CMP = 12, CPX = 13, CPY = 14, BIT = 15;
+	private static final int INC = 16, DEC = 17, ASL = 18, LSR = 19, ROL = 20, ROR = 21;
+	private static final int INX = 22, INY = 23, DEX = 24, DEY = 25;
+	private static final int TAX = 26, TAY = 27, TXA = 28, TYA = 29, TSX = 30, TXS = 31;
+	private static final int CLC = 32, SEC = 33, CLV = 34, CLD = 35, SED = 36, NOP = 37, PHA = 38, PLA = 39;
+	private static final int JMP = 40, JSR = 41, RTS = 42;
+	private static final int BPL = 43, BMI = 44, BVC = 45, BVS = 46, BCC = 47, BCS = 48, BNE = 49, BEQ = 50;
+
+	private static final int[] OPERATION = new int[256];
+	private static final int[] MODE = new int[256];
+
+	static {
+		define(LDA, 0xA9, IMM, 0xA5, ZP, 0xB5, ZPX, 0xAD, ABS);
+		define(LDX, 0xA2, IMM, 0xA6, ZP, 0xB6, ZPY, 0xAE, ABS);
+		define(LDY, 0xA0, IMM, 0xA4, ZP, 0xB4, ZPX, 0xAC, ABS);
+		define(STA, 0x85, ZP, 0x95, ZPX, 0x8D, ABS);
+		define(STX, 0x86, ZP, 0x96, ZPY, 0x8E, ABS);
+		define(STY, 0x84, ZP, 0x94, ZPX, 0x8C, ABS);
+		define(ADC, 0x69, IMM, 0x65, ZP, 0x75, ZPX, 0x6D, ABS);
+		define(SBC, 0xE9, IMM, 0xE5, ZP, 0xF5, ZPX, 0xED, ABS);
+		define(AND, 0x29, IMM, 0x25, ZP, 0x35, ZPX, 0x2D, ABS);
+		define(ORA, 0x09, IMM, 0x05, ZP, 0x15, ZPX, 0x0D, ABS);
+		define(EOR, 0x49, IMM, 0x45, ZP, 0x55, ZPX, 0x4D, ABS);
+		define(CMP, 0xC9, IMM, 0xC5, ZP, 0xD5, ZPX, 0xCD, ABS);
+		define(CPX, 0xE0, IMM, 0xE4, ZP, 0xEC, ABS);
+		define(CPY, 0xC0, IMM, 0xC4, ZP, 0xCC, ABS);
+		define(BIT, 0x24, ZP, 0x2C, ABS);
+		define(INC, 0xE6, ZP, 0xF6, ZPX, 0xEE, ABS);
+		define(DEC, 0xC6, ZP, 0xD6, ZPX, 0xCE, ABS);
+		define(ASL, 0x0A, ACC, 0x06, ZP, 0x16, ZPX, 0x0E, ABS);
+		define(LSR, 0x4A, ACC, 0x46, ZP, 0x56, ZPX, 0x4E, ABS);
+		define(ROL, 0x2A, ACC, 0x26, ZP, 0x36, ZPX, 0x2E, ABS);
+		define(ROR, 0x6A, ACC, 0x66, ZP, 0x76, ZPX, 0x6E, ABS);
+		define(INX, 0xE8, IMP);
+		define(INY, 0xC8, IMP);
+		define(DEX, 0xCA, IMP);
+		define(DEY, 0x88, IMP);
+		define(TAX, 0xAA, IMP);
+		define(TAY, 0xA8, IMP);
+		define(TXA, 0x8A, IMP);
+		define(TYA, 0x98, IMP);
+		define(TSX, 0xBA, IMP);
+		define(TXS, 0x9A, IMP);
+		define(CLC, 0x18, IMP);
+		define(SEC, 0x38, IMP);
+		define(CLV, 0xB8, IMP);
+		define(CLD, 0xD8, IMP);
+		define(SED, 0xF8, IMP);
+		define(NOP, 0xEA, IMP);
+		define(PHA, 0x48, IMP);
+		define(PLA, 0x68, IMP);
+		define(JMP, 0x4C, JUMP);
+		define(JSR, 0x20, JUMP);
+		define(RTS, 0x60, IMP);
+		define(BPL, 0x10, REL);
+		define(BMI, 0x30, REL);
+		define(BVC, 0x50, REL);
+		define(BVS, 0x70, REL);
+		define(BCC, 0x90, REL);
+		define(BCS, 0xB0, REL);
+		define(BNE, 0xD0, REL);
+		define(BEQ, 0xF0, REL);
+	}
+
+	// pares opcode, modo
+	private static void define(int operation, int... opcodesAndModes) {
+		for (int n = 0; n < opcodesAndModes.length; n += 2) {
+			OPERATION[opcodesAndModes[n]] = operation;
+			MODE[opcodesAndModes[n]] = opcodesAndModes[n + 1];
+		}
+	}
+
+	// variaveis locais do metodo gerado (0 = this)
+	private static final int CPU = 1;
+	private static final int RAM = 2;
+	private static final int A = 3;
+	private static final int X = 4;
+	private static final int Y = 5;
+	private static final int SP = 6;
+	private static final int FLAGS = 7;
+	private static final int NZ = 8;
+	private static final int VALUE = 9;
+	private static final int TEMP = 10;
+	private static final int INDEX = 11;
+	private static final int EXTRA_CYCLES = 12;	// ciclos variaveis do desvio final
+	private static final int MAX_LOCALS = 13;
+
+	private static final String CPU_CLASS = "com/jamicom/Cpu";
+	private static final String[] REGISTER_FIELDS = {"regA", "regX", "regY", "regSP", "flagsRegister", "nzResult"};
+	private static final int[] REGISTER_LOCALS = {A, X, Y, SP, FLAGS, NZ};
+
+	private final Cpu cpu;
+	private final Mapper mapper;
+	private final MethodHandles.Lookup lookup;
+	private int[] rom;						// PRG ROM dos blocos atuais
+	private CompiledBlock[] blocks;		// por indice da PRG ROM, com a lista dos enderecos da CPU
+	private int[] heat;
+	private int[] ram;						// RAM interna (pagina $0000), passada aos blocos
+	private int ramBase;					// indice de $0000 em ram
+	private int compiledBlocks;				// total gerado
+	private int cachedBlocks;				// classes ocultas em blocks
+
+	private BlockClassWriter writer;		// classe em geracao
+	private int[] registerFields;
+
+	Recompiler(Cpu cpu, Mapper mapper, MethodHandles.Lookup lookup) {
+		this.cpu = cpu;
+		this.mapper = mapper;
+		this.lookup = lookup;
+	}
+
+	/* executa o bloco gerado para PC, se houver e couber no orcamento de run(); devolve os ciclos executados
+	 * ou 0 para o interpretador seguir com a instrucao atual
+	 */
+	int execute(int cycleBudget) {
+		int pc = cpu.PC;
+		if (pc > 0xFFFF)
+			return 0;
+		int[] page = mapper.getPrgRomPage(pc);
+		if (page == null)
+			return 0;
+		if (page != rom) {		// cartucho novo
+			rom = page;
+			blocks = new CompiledBlock[page.length];
+			heat = new int[page.length];
+			cachedBlocks = 0;
+		}
+		int index = mapper.getReadPageOffset(pc) + pc;
+		CompiledBlock block = blocks[index];
+		while (block != null && block.address != pc)
+			block = block.next;
+		if (block == null) {
+			if (++heat[index] < HOT_THRESHOLD)
+				return 0;
+			heat[index] = 0;
+			if (cachedBlocks >= MAX_CACHED_BLOCKS) {
+				blocks = new CompiledBlock[rom.length];
+				cachedBlocks = 0;
+			}
+			block = compile(pc, index);
+			block.next = blocks[index];
+			blocks[index] = block;
+		}
+		if (cycleBudget <= block.guardCycles)
+			return 0;
+		return block.code.execute(cpu, ram);
+	}
+
+	int getCompiledBlocks() {
+		return compiledBlocks;
+	}
+
+	// indice de addr em ram, ou -1 se o endereco nao for a RAM interna lida e escrita direto
+	private int ramIndex(int addr) {
+		if (mapper.getReadPage(addr) != ram || mapper.getWritePage(addr) != ram)
+			return -1;
+		int offset = mapper.getReadPageOffset(addr);
+		if (offset != mapper.getWritePageOffset(addr))
+			return -1;
+		return offset + addr;
+	}
+
+	// traduz o bloco basico que comeca em pc (indice index da PRG ROM)
+	private CompiledBlock compile(int pc, int index) {
+		int[] pageRam = mapper.getReadPage(0);
+		if (pageRam != ram) {
+			ram = pageRam;
+			blocks = new CompiledBlock[rom.length];
+			cachedBlocks = 0;
+		}
+		if (ram == null || ramIndex(0) < 0)
+			return new CompiledBlock(null, pc, Integer.MAX_VALUE);
+		ramBase = ramIndex(0);
+
+		writer = new BlockClassWriter();
+		registerFields = new int[REGISTER_FIELDS.length];
+		for (int n = 0; n < REGISTER_FIELDS.length; n++) {
+			registerFields[n] = writer.fieldRef(CPU_CLASS, REGISTER_FIELDS[n], "I");
+			writer.aload(CPU);
+			writer.getField(registerFields[n]);
+			writer.istore(REGISTER_LOCALS[n]);
+		}
+		writer.push(0);
+		writer.istore(EXTRA_CYCLES);
+
+		int address = pc;
+		int count = 0;
+		int cycles = 0;
+		int lastCycles = 0;
+		boolean pcStored = false;
+		while (count < MAX_BLOCK_INSTRUCTIONS) {
+			// a instrucao inteira (3 bytes) deve estar na pagina do inicio do bloco
+			if ((address >> Mapper.PAGE_SHIFT) != (pc >> Mapper.PAGE_SHIFT) || (address & PAGE_MASK) > PAGE_MASK - 2)
+				break;
+			int offset = index + address - pc;
+			int opcode = rom[offset];
+			int operation = OPERATION[opcode];
+			int mode = MODE[opcode];
+			int operand = rom[offset + 1] | (rom[offset + 2] << 8);
+			if (operation == 0 || (mode == ABS && ramIndex(operand) < 0))
+				break;
+			lastCycles = cpu.getOpcodeCycles(opcode);
+			cycles += lastCycles;
+			count++;
+			pcStored = translate(operation, mode, address, operand);
+			if (pcStored)
+				break;
+			address += mode == IMP || mode == ACC ? 1 : (mode == ABS || mode == JUMP ? 3 : 2);
+		}
+		if (count < MIN_BLOCK_INSTRUCTIONS) {
+			writer = null;
+			return new CompiledBlock(null, pc, Integer.MAX_VALUE);
+		}
+
+		if (!pcStored)
+			storePc(address);
+		for (int n = 0; n < REGISTER_FIELDS.length; n++) {
+			writer.aload(CPU);
+			writer.iload(REGISTER_LOCALS[n]);
+			writer.putField(registerFields[n]);
+		}
+		writer.push(cycles);
+		writer.iload(EXTRA_CYCLES);
+		writer.binary(BlockClassWriter.IADD);
+		writer.op(BlockClassWriter.IRETURN, -1);
+
+		byte[] bytes = writer.toClass("com/jamicom/CpuBlock", "com/jamicom/Recompiler$Block", "execute",
+				"(Lcom/jamicom/Cpu;[I)I", MAX_LOCALS);
+		writer = null;
+		try {
+			MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytes, true, MethodHandles.Lookup.ClassOption.NESTMATE);
+			Block code = (Block) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+			compiledBlocks++;
+			cachedBlocks++;
+			return new CompiledBlock(code, pc, cycles - lastCycles);
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(String.format("falha ao gerar o bloco em %04X", pc), e);
+		}
+	}
+
+	/* emite uma instrucao com a mesma semantica dos tratadores da Cpu (flags N/Z em nzResult, C e V sem desvios)
+	 * devolve true se a instrucao encerra o bloco e ja gravou o PC (desvios, JMP, JSR, RTS)
+	 */
+	private boolean translate(int operation, int mode, int address, int operand) {
+		BlockClassWriter w = writer;
+		switch (operation) {
+			case LDA:
+				loadValue(mode, operand);
+				setRegister(A);
+				return false;
+			case LDX:
+				loadValue(mode, operand);
+				setRegister(X);
+				return false;
+			case LDY:
+				loadValue(mode, operand);
+				setRegister(Y);
+				return false;
+			case STA:
+				store(mode, operand, A);
+				return false;
+			case STX:
+				store(mode, operand, X);
+				return false;
+			case STY:
+				store(mode, operand, Y);
+				return false;
+			case ADC:
+				loadValue(mode, operand);
+				w.istore(VALUE);
+				addWithCarry();
+				return false;
+			case SBC:
+				loadValue(mode, operand);
+				w.push(-1);
+				w.binary(BlockClassWriter.IXOR);
+				w.push(0xFF);
+				w.binary(BlockClassWriter.IAND);
+				w.istore(VALUE);
+				addWithCarry();
+				return false;
+			case AND:
+			case ORA:
+			case EOR:
+				w.iload(A);
+				loadValue(mode, operand);
+				w.binary(operation == AND ? BlockClassWriter.IAND : (operation == ORA ? BlockClassWriter.IOR : BlockClassWriter.IXOR));
+				setRegister(A);
+				return false;
+			case CMP:
+				compare(A, mode, operand);
+				return false;
+			case CPX:
+				compare(X, mode, operand);
+				return false;
+			case CPY:
+				compare(Y, mode, operand);
+				return false;
+			case BIT:
+				bit(mode, operand);
+				return false;
+			case INC:
+			case DEC:
+				pushIndex(mode, operand);
+				w.istore(INDEX);
+				w.aload(RAM);
+				w.iload(INDEX);
+				w.aload(RAM);
+				w.iload(INDEX);
+				w.op(BlockClassWriter.IALOAD, -1);
+				w.push(operation == INC ? 1 : -1);
+				w.binary(BlockClassWriter.IADD);
+				w.push(0xFF);
+				w.binary(BlockClassWriter.IAND);
+				w.op(BlockClassWriter.DUP, 1);
+				w.istore(NZ);
+				w.op(BlockClassWriter.IASTORE, -3);
+				return false;
+			case ASL:
+			case LSR:
+			case ROL:
+			case ROR:
+				shift(operation, mode, operand);
+				return false;
+			case INX:
+				increment(X, 1);
+				return false;
+			case INY:
+				increment(Y, 1);
+				return false;
+			case DEX:
+				increment(X, -1);
+				return false;
+			case DEY:
+				increment(Y, -1);
+				return false;
+			case TAX:
+				w.iload(A);
+				setRegister(X);
+				return false;
+			case TAY:
+				w.iload(A);
+				setRegister(Y);
+				return false;
+			case TXA:
+				w.iload(X);
+				setRegister(A);
+				return false;
+			case TYA:
+				w.iload(Y);
+				setRegister(A);
+				return false;
+			case TSX:
+				w.iload(SP);
+				setRegister(X);
+				return false;
+			case TXS:
+				w.iload(X);
+				w.istore(SP);
+				return false;
+			case CLC:
+				changeFlags(BlockClassWriter.IAND, ~0x01);
+				return false;
+			case SEC:
+				changeFlags(BlockClassWriter.IOR, 0x01);
+				return false;
+			case CLV:
+				changeFlags(BlockClassWriter.IAND, ~0x40);
+				return false;
+			case CLD:
+				changeFlags(BlockClassWriter.IAND, ~0x08);
+				return false;
+			case SED:
+				changeFlags(BlockClassWriter.IOR, 0x08);
+				return false;
+			case NOP:
+				return false;
+			case PHA:
+				w.iload(A);
+				push();
+				return false;
+			case PLA:
+				pull();
+				setRegister(A);
+				return false;
+			case JMP:
+				storePc(operand);
+				return true;
+			case JSR:
+				w.push((address + 2) >> 8);
+				push();
+				w.push((address + 2) & 0xFF);
+				push();
+				storePc(operand);
+				return true;
+			case RTS:
+				pull();
+				w.istore(VALUE);
+				pull();
+				w.istore(TEMP);
+				w.aload(CPU);
+				w.iload(VALUE);
+				w.iload(TEMP);
+				w.push(8);
+				w.binary(BlockClassWriter.ISHL);
+				w.binary(BlockClassWriter.IOR);
+				w.push(1);
+				w.binary(BlockClassWriter.IADD);
+				w.putField(w.fieldRef(CPU_CLASS, "PC", "I"));
+				return true;
+			default:
+				branch(operation, address, operand & 0xFF);
+				return true;
+		}
+	}
+
+	// empilha o indice em ram do operando (pagina zero, pagina zero indexada ou absoluto na RAM)
+	private void pushIndex(int mode, int operand) {
+		BlockClassWriter w = writer;
+		switch (mode) {
+			case ZP:
+				w.push(ramBase + (operand & 0xFF));
+				break;
+			case ZPX:
+			case ZPY:
+				w.iload(mode == ZPX ? X : Y);
+				w.push(operand & 0xFF);
+				w.binary(BlockClassWriter.IADD);
+				w.push(0xFF);
+				w.binary(BlockClassWriter.IAND);
+				if (ramBase != 0) {
+					w.push(ramBase);
+					w.binary(BlockClassWriter.IADD);
+				}
+				break;
+			default:
+				w.push(ramIndex(operand));
+				break;
+		}
+	}
+
+	private void loadValue(int mode, int operand) {
+		if (mode == IMM) {
+			writer.push(operand & 0xFF);
+			return;
+		}
+		writer.aload(RAM);
+		pushIndex(mode, operand);
+		writer.op(BlockClassWriter.IALOAD, -1);
+	}
+
+	private void store(int mode, int operand, int register) {
+		writer.aload(RAM);
+		pushIndex(mode, operand);
+		writer.iload(register);
+		writer.op(BlockClassWriter.IASTORE, -3);
+	}
+
+	// valor no topo da pilha vai para o registrador e para nzResult
+	private void setRegister(int register) {
+		writer.op(BlockClassWriter.DUP, 1);
+		writer.istore(register);
+		writer.istore(NZ);
+	}
+
+	private void increment(int register, int delta) {
+		writer.iload(register);
+		writer.push(delta);
+		writer.binary(BlockClassWriter.IADD);
+		writer.push(0xFF);
+		writer.binary(BlockClassWriter.IAND);
+		setRegister(register);
+	}
+
+	private void changeFlags(int operation, int mask) {
+		writer.iload(FLAGS);
+		writer.push(mask);
+		writer.binary(operation);
+		writer.istore(FLAGS);
+	}
+
+	// como Cpu.opAdc, com o operando em VALUE
+	private void addWithCarry() {
+		BlockClassWriter w = writer;
+		w.iload(VALUE);
+		w.iload(A);
+		w.binary(BlockClassWriter.IADD);
+		w.iload(FLAGS);
+		w.push(1);
+		w.binary(BlockClassWriter.IAND);
+		w.binary(BlockClassWriter.IADD);
+		w.istore(TEMP);
+
+		w.iload(FLAGS);
+		w.push(~0x41);
+		w.binary(BlockClassWriter.IAND);
+		w.iload(A);
+		w.iload(TEMP);
+		w.binary(BlockClassWriter.IXOR);
+		w.iload(VALUE);
+		w.iload(TEMP);
+		w.binary(BlockClassWriter.IXOR);
+		w.binary(BlockClassWriter.IAND);
+		w.push(0x80);
+		w.binary(BlockClassWriter.IAND);
+		w.push(1);
+		w.binary(BlockClassWriter.ISHR);
+		w.binary(BlockClassWriter.IOR);
+		w.iload(TEMP);
+		w.push(8);
+		w.binary(BlockClassWriter.ISHR);
+		w.binary(BlockClassWriter.IOR);
+		w.istore(FLAGS);
+
+		w.iload(TEMP);
+		w.push(0xFF);
+		w.binary(BlockClassWriter.IAND);
+		setRegister(A);
+	}
+
+	// como Cpu.opCmp: C = registrador >= valor, N/Z da diferenca
+	private void compare(int register, int mode, int operand) {
+		BlockClassWriter w = writer;
+		w.iload(register);
+		loadValue(mode, operand);
+		w.binary(BlockClassWriter.ISUB);
+		w.istore(TEMP);
+		w.iload(FLAGS);
+		w.push(~0x01);
+		w.binary(BlockClassWriter.IAND);
+		w.iload(TEMP);
+		w.push(31);
+		w.binary(BlockClassWriter.IUSHR);
+		w.push(1);
+		w.binary(BlockClassWriter.IXOR);
+		w.binary(BlockClassWriter.IOR);
+		w.istore(FLAGS);
+		w.iload(TEMP);
+		w.push(0xFF);
+		w.binary(BlockClassWriter.IAND);
+		w.istore(NZ);
+	}
+
+	// empilha 1 se o valor no topo da pilha for diferente de zero, 0 se for zero: (v | -v) >>> 31
+	private void nonZero() {
+		BlockClassWriter w = writer;
+		w.istore(TEMP);
+		w.iload(TEMP);
+		w.iload(TEMP);
+		w.op(BlockClassWriter.INEG, 0);
+		w.binary(BlockClassWriter.IOR);
+		w.push(31);
+		w.binary(BlockClassWriter.IUSHR);
+	}
+
+	// como Cpu.opBit: V do operando; N do operando e Z do AND, com N no bit 8 de nzResult quando Z = 1
+	private void bit(int mode, int operand) {
+		BlockClassWriter w = writer;
+		loadValue(mode, operand);
+		w.istore(VALUE);
+		w.iload(FLAGS);
+		w.push(~0x40);
+		w.binary(BlockClassWriter.IAND);
+		w.iload(VALUE);
+		w.push(0x40);
+		w.binary(BlockClassWriter.IAND);
+		w.binary(BlockClassWriter.IOR);
+		w.istore(FLAGS);
+
+		w.iload(A);
+		w.iload(VALUE);
+		w.binary(BlockClassWriter.IAND);
+		nonZero();
+		w.istore(INDEX);
+		// nzResult = ((valor & 0x80) << (1 - naoZero)) | naoZero
+		w.iload(VALUE);
+		w.push(0x80);
+		w.binary(BlockClassWriter.IAND);
+		w.push(1);
+		w.iload(INDEX);
+		w.binary(BlockClassWriter.ISUB);
+		w.binary(BlockClassWriter.ISHL);
+		w.iload(INDEX);
+		w.binary(BlockClassWriter.IOR);
+		w.istore(NZ);
+	}
+
+	// ASL, LSR, ROL e ROR no acumulador ou na memoria (como opAsl, opLsr, opRol e opRor)
+	private void shift(int operation, int mode, int operand) {
+		BlockClassWriter w = writer;
+		if (mode == ACC)
+			w.iload(A);
+		else {
+			pushIndex(mode, operand);
+			w.istore(INDEX);
+			w.aload(RAM);
+			w.iload(INDEX);
+			w.op(BlockClassWriter.IALOAD, -1);
+		}
+		w.istore(VALUE);
+
+		// resultado em TEMP (ROL e ROR usam o carry anterior)
+		w.iload(VALUE);
+		switch (operation) {
+			case ASL:
+				w.push(1);
+				w.binary(BlockClassWriter.ISHL);
+				w.push(0xFF);
+				w.binary(BlockClassWriter.IAND);
+				break;
+			case LSR:
+				w.push(1);
+				w.binary(BlockClassWriter.ISHR);
+				break;
+			case ROL:
+				w.push(1);
+				w.binary(BlockClassWriter.ISHL);
+				w.push(0xFF);
+				w.binary(BlockClassWriter.IAND);
+				w.iload(FLAGS);
+				w.push(1);
+				w.binary(BlockClassWriter.IAND);
+				w.binary(BlockClassWriter.IOR);
+				break;
+			default:
+				w.push(1);
+				w.binary(BlockClassWriter.ISHR);
+				w.iload(FLAGS);
+				w.push(1);
+				w.binary(BlockClassWriter.IAND);
+				w.push(7);
+				w.binary(BlockClassWriter.ISHL);
+				w.binary(BlockClassWriter.IOR);
+				break;
+		}
+		w.istore(TEMP);
+
+		// carry: bit 7 (ASL, ROL) ou bit 0 (LSR, ROR) do valor original
+		w.iload(FLAGS);
+		w.push(~0x01);
+		w.binary(BlockClassWriter.IAND);
+		w.iload(VALUE);
+		if (operation == ASL || operation == ROL) {
+			w.push(7);
+			w.binary(BlockClassWriter.ISHR);
+		}
+		else {
+			w.push(1);
+			w.binary(BlockClassWriter.IAND);
+		}
+		w.binary(BlockClassWriter.IOR);
+		w.istore(FLAGS);
+
+		if (mode == ACC) {
+			w.iload(TEMP);
+			setRegister(A);
+		}
+		else {
+			w.aload(RAM);
+			w.iload(INDEX);
+			w.iload(TEMP);
+			w.op(BlockClassWriter.IASTORE, -3);
+			w.iload(TEMP);
+			w.istore(NZ);
+		}
+	}
+
+	// grava na pilha ($0100 + SP) o valor no topo da pilha da JVM
+	private void push() {
+		BlockClassWriter w = writer;
+		w.istore(VALUE);
+		w.aload(RAM);
+		w.push(ramBase + 0x100);
+		w.iload(SP);
+		w.binary(BlockClassWriter.IADD);
+		w.iload(VALUE);
+		w.op(BlockClassWriter.IASTORE, -3);
+		w.iload(SP);
+		w.push(1);
+		w.binary(BlockClassWriter.ISUB);
+		w.push(0xFF);
+		w.binary(BlockClassWriter.IAND);
+		w.istore(SP);
+	}
+
+	// le o proximo byte da pilha para o topo da pilha da JVM
+	private void pull() {
+		BlockClassWriter w = writer;
+		w.iload(SP);
+		w.push(1);
+		w.binary(BlockClassWriter.IADD);
+		w.push(0xFF);
+		w.binary(BlockClassWriter.IAND);
+		w.istore(SP);
+		w.aload(RAM);
+		w.push(ramBase + 0x100);
+		w.iload(SP);
+		w.binary(BlockClassWriter.IADD);
+		w.op(BlockClassWriter.IALOAD, -1);
+	}
+
+	private void storePc(int value) {
+		writer.aload(CPU);
+		writer.push(value);
+		writer.putField(writer.fieldRef(CPU_CLASS, "PC", "I"));
+	}
+
+	/* desvio condicional sem desvio na JVM: com tomado = 0 ou 1, PC = seguinte + tomado * (alvo - seguinte)
+	 * e os ciclos extras (1, ou 2 ao cruzar pagina, como em Cpu.opBranch) = tomado * extra
+	 */
+	private void branch(int operation, int address, int offset) {
+		BlockClassWriter w = writer;
+		switch (operation) {
+			case BPL:
+			case BMI:
+				w.iload(NZ);
+				w.push(0x180);
+				w.binary(BlockClassWriter.IAND);
+				nonZero();
+				break;
+			case BNE:
+			case BEQ:
+				w.iload(NZ);
+				w.push(0xFF);
+				w.binary(BlockClassWriter.IAND);
+				nonZero();
+				break;
+			case BCC:
+			case BCS:
+				w.iload(FLAGS);
+				w.push(1);
+				w.binary(BlockClassWriter.IAND);
+				break;
+			default:		// BVC, BVS
+				w.iload(FLAGS);
+				w.push(6);
+				w.binary(BlockClassWriter.ISHR);
+				w.push(1);
+				w.binary(BlockClassWriter.IAND);
+				break;
+		}
+		if (operation == BPL || operation == BEQ || operation == BCC || operation == BVC) {
+			w.push(1);
+			w.binary(BlockClassWriter.IXOR);
+		}
+		w.istore(VALUE);
+
+		int next = address + 2;
+		int target = (next + (byte) offset) & 0xFFFF;
+		int extra = ((address ^ target) & 0x100) != 0 ? 2 : 1;
+		w.aload(CPU);
+		w.push(next);
+		w.iload(VALUE);
+		w.push(target - next);
+		w.binary(BlockClassWriter.IMUL);
+		w.binary(BlockClassWriter.IADD);
+		w.putField(w.fieldRef(CPU_CLASS, "PC", "I"));
+		w.iload(VALUE);
+		w.push(extra);
+		w.binary(BlockClassWriter.IMUL);
+		w.istore(EXTRA_CYCLES);
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Scheduler.java
+ * Define objeto do tipo Scheduler (agenda de eventos do sistema)
+ * mantem os proximos eventos (fim de quadro, NMI, passos do frame counter da APU, busca da DMC, IRQ do mapper)
+ * ordenados pelo relogio mestre em um heap minimo de tipos primitivos;
+ * o relogio mestre conta pontos (dots) da PPU, cada ciclo da CPU equivale a 3 pontos;
+ * a CPU executa sem interrupcoes ate o instante do proximo evento
+ */
+
+package com.jamicom;
+
+import java.util.Arrays;
+
+class Scheduler {
+
+	// tipos de evento; cada tipo tem no maximo uma ocorrencia pendente na agenda
+	static final int EVENT_FRAME_END = 0;
+	static final int EVENT_VBLANK_NMI = 1;
+	static final int EVENT_APU_FRAME = 2;
+	static final int EVENT_DMC_FETCH = 3;
+	static final int EVENT_MAPPER_IRQ = 4;
+	static final int EVENT_INTERRUPT_POLL = 5;
+	private static final int EVENT_COUNT = 6;
+
+	static final long NEVER = Long.MAX_VALUE;
+
+	private long[] heapTimes;
+	private int[] heapEvents;
+	private int[] heapIndex;	// posicao de cada tipo de evento no heap, -1 se nao agendado
+	private int heapSize;
+	private long lastEventTime;
+
+	Scheduler() {
+		heapTimes = new long[EVENT_COUNT];
+		heapEvents = new int[EVENT_COUNT];
+		heapIndex = new int[EVENT_COUNT];
+		clear();
+	}
+
+	void clear() {
+		heapSize = 0;
+		Arrays.fill(heapIndex, -1);
+	}
+
+	// agenda o evento para o instante informado, substituindo o agendamento anterior do mesmo tipo
+	void schedule(int event, long time) {
+		int index = heapIndex[event];
+		if (index < 0) {
+			index = heapSize++;
+			heapEvents[index] = event;
+			heapIndex[event] = index;
+			heapTimes[index] = time;
+			siftUp(index);
+		}
+		else {
+			long oldTime = heapTimes[index];
+			heapTimes[index] = time;
+			if (time < oldTime)
+				siftUp(index);
+			else
+				siftDown(index);
+		}
+	}
+
+	void cancel(int event) {
+		int index = heapIndex[event];
+		if (index < 0)
+			return;
+		heapIndex[event] = -1;
+		heapSize--;
+		if (index < heapSize) {
+			heapTimes[index] = heapTimes[heapSize];
+			heapEvents[index] = heapEvents[heapSize];
+			heapIndex[heapEvents[index]] = index;
+			siftDown(index);
+			siftUp(index);
+		}
+	}
+
+	boolean isScheduled(int event) {
+		return heapIndex[event] >= 0;
+	}
+
+	long nextEventTime() {
+		return heapSize > 0 ? heapTimes[0] : NEVER;
+	}
+
+	// remove e retorna o evento mais proximo; o instante agendado fica em getLastEventTime()
+	int popEvent() {
+		int event = heapEvents[0];
+		lastEventTime = heapTimes[0];
+		cancel(event);
+		return event;
+	}
+
+	long getLastEventTime() {
+		return lastEventTime;
+	}
+
+	private void siftUp(int index) {
+		while (index > 0) {
+			int parent = (index - 1) >> 1;
+			if (heapTimes[parent] <= heapTimes[index])
+				break;
+			swap(index, parent);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index) {
+		while (true) {
+			int child = (index << 1) + 1;
+			if (child >= heapSize)
+				break;
+			if (child + 1 < heapSize && heapTimes[child + 1] < heapTimes[child])
+				child++;
+			if (heapTimes[index] <= heapTimes[child])
+				break;
+			swap(index, child);
+			index = child;
+		}
+	}
+
+	private void swap(int a, int b) {
+		long time = heapTimes[a];
+		heapTimes[a] = heapTimes[b];
+		heapTimes[b] = time;
+		int event = heapEvents[a];
+		heapEvents[a] = heapEvents[b];
+		heapEvents[b] = event;
+		heapIndex[heapEvents[a]] = a;
+		heapIndex[heapEvents[b]] = b;
+	}
+}
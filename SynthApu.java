@@ -0,0 +1,30 @@
+/**
+ * SynthApu.java
+ * APU usada pela thread de sintese (ApuWorker): gera apenas o audio, sem acesso ao resto do console
+ * as interrupcoes ficam com a APU da emulacao e os bytes da DMC vem do registro, na ordem em que ela os leu
+ */
+
+package com.jamicom;
+
+class SynthApu extends Apu {
+
+	private final ApuWorker worker;
+
+	SynthApu(ApuWorker worker, AudioSink audioSink) {
+		this.worker = worker;
+		setAudioSink(audioSink);
+	}
+
+	void signalFrameIrq() {
+	}
+
+	void clearFrameIrq() {
+	}
+
+	void signalDmcIrq() {
+	}
+
+	int readDmcSample(int addr) {
+		return worker.nextDmcSample();
+	}
+}
@@ -0,0 +1,19 @@
+/**
+ * VideoSink.java
+ * Destino dos quadros produzidos pelo emulador (janela Swing, arquivo, descarte em lote)
+ * o buffer contem SCR_X * SCR_Y pixels RGB e e reaproveitado no quadro seguinte
+ */
+
+package com.jamicom;
+
+public interface VideoSink {
+
+	// chamado ao final de cada quadro com o buffer da tela ja convertido em RGB
+	void frameReady(int[] screenBuffer);
+
+	// descarta os quadros (execucao sem tela)
+	VideoSink NONE = new VideoSink() {
+		public void frameReady(int[] screenBuffer) {
+		}
+	};
+}
@@ -0,0 +1,75 @@
+/**
+ * AllocationGate.java
+ * Verificacao de regressao: o laco de quadros em regime (CPU, PPU, APU, mapper, tela e audio) nao deve alocar memoria
+ * executa a ROM sintetica (RomImage.demoRom), aquece o JIT e mede os bytes alocados pela thread da emulacao
+ * em 1000 quadros; termina com codigo de saida 1 se o total passar do limite (padrao: zero bytes)
+ * coletas de lixo durante o jogo causam as pausas ouvidas como estalos no audio
+ *
+ * uso: java com.jamicom.AllocationGate [-frames N] [-warmup N] [-budget bytes]
+ */
+
+package com.jamicom;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+public class AllocationGate {
+
+	public static void main(String[] args) throws IOException {
+		int frames = 1000;
+		int warmup = 1000;
+		long budget = 0;
+
+		for (int n = 0; n < args.length; n++) {
+			if (args[n].equals("-frames"))
+				frames = Integer.parseInt(args[++n]);
+			else if (args[n].equals("-warmup"))
+				warmup = Integer.parseInt(args[++n]);
+			else if (args[n].equals("-budget"))
+				budget = Long.parseLong(args[++n]);
+			else {
+				System.out.println("uso: AllocationGate [-frames N] [-warmup N] [-budget bytes]");
+				System.exit(2);
+			}
+		}
+
+		// destinos que consomem os dados como o front end (copia da tela e do audio para buffers proprios)
+		final int[] videoCopy = new int[Globals.SCR_X * Globals.SCR_Y];
+		final byte[] audioCopy = new byte[Apu.MAX_FRAME_SAMPLES * 2];
+		VideoSink video = new VideoSink() {
+			public void frameReady(int[] screenBuffer) {
+				System.arraycopy(screenBuffer, 0, videoCopy, 0, videoCopy.length);
+			}
+		};
+		AudioSink audio = new AudioSink() {
+			public void writeFrame(byte[] samples, int length) {
+				System.arraycopy(samples, 0, audioCopy, 0, Math.min(length, audioCopy.length));
+			}
+		};
+		InputSource input = new InputSource() {
+			public int getButtons(long frame) {
+				return (frame & 0x40) != 0 ? Controller.BUTTON_RIGHT : 0;
+			}
+		};
+
+		Emulator emulator = new Emulator(video, audio, input);
+		emulator.loadCartridge(RomImage.cartridge(RomImage.demoRom()));
+		emulator.runFrames(warmup);
+
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		long before = threads.getThreadAllocatedBytes(threadId);
+		emulator.runFrames(frames);
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+		System.out.printf("alocacao em %d quadros: %d bytes (%.1f bytes/quadro), limite %d bytes%n",
+				frames, allocated, (double) allocated / frames, budget);
+		if (allocated > budget) {
+			System.out.println("FALHOU: o laco de quadros alocou memoria acima do limite");
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * ApuBenchmark.java
+ * Benchmark JMH da sintese e mixagem da APU (Apu.audioUpdate via catchUp) isolada da CPU e da PPU
+ * cada invocacao emula um segundo de audio: 60 quadros, cada um com os ciclos de um quadro NTSC seguidos de
+ * audioPlayFrame, que entrega o buffer a uma linha de audio nula (AudioSink.NONE)
+ * o resultado (ns/op) e o tempo gasto por segundo de audio emulado
+ *
+ * canais (mascara escrita em $4015):
+ * SILENT         - todos desligados
+ * SQUARES_SWEEP  - os dois quadrados com sweep ativo
+ * TRIANGLE       - somente o triangulo
+ * NOISE          - somente o ruido
+ * DMC            - somente a DMC, tocando uma amostra em laco
+ * ALL            - os cinco canais
+ * MUTED_ALL      - os cinco canais no modo mudo (sem sintese nem mixagem)
+ *
+ * sampleRate: taxa de saida do BlepBuffer (o custo da sintese por degraus cresce com a taxa)
+ */
+
+package com.jamicom;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApuBenchmark {
+
+	static final int FRAMES_PER_SECOND = 60;
+	static final long FRAME_DOTS = (long) Globals.SCANLINES_PER_FRAME * Globals.DOTS_PER_SCANLINE;
+
+	@Param({"SILENT", "SQUARES_SWEEP", "TRIANGLE", "NOISE", "DMC", "ALL", "MUTED_ALL"})
+	public String channels;
+
+	@Param({"22050", "48000", "96000"})
+	public int sampleRate;
+
+	private Apu apu;
+	private Mapper mapper;
+	private int channelMask;
+	private long clock;
+
+	@Setup
+	public void setup() throws IOException {
+		// amostra da DMC em $C100-$CFFF: bytes variados para o DAC subir e descer
+		byte[] prg = RomImage.idlePrg();
+		for (int n = 0x100; n < 0x1000; n++)
+			prg[n] = (byte) (n * 0x9E ^ (n >> 3));
+
+		Emulator emulator = new Emulator();
+		emulator.loadCartridge(RomImage.cartridge(RomImage.build(prg, RomImage.patternChr(), 0, 1)));
+		emulator.setSampleRate(sampleRate);
+		apu = emulator.getApu();
+		mapper = emulator.getMapper();
+		clock = 0;
+
+		switch (channels) {
+			case "SILENT":
+				channelMask = 0x00;
+				break;
+			case "SQUARES_SWEEP":
+				channelMask = 0x03;
+				break;
+			case "TRIANGLE":
+				channelMask = 0x04;
+				break;
+			case "NOISE":
+				channelMask = 0x08;
+				break;
+			case "DMC":
+				channelMask = 0x10;
+				break;
+			case "ALL":
+				channelMask = 0x1F;
+				break;
+			case "MUTED_ALL":
+				channelMask = 0x1F;
+				emulator.setAudioMuted(true);
+				break;
+			default:
+				throw new IllegalArgumentException("canais desconhecidos: " + channels);
+		}
+		// modo de 4 passos sem IRQ do frame counter
+		mapper.ioWrite(0x4017, 0x40);
+	}
+
+	@Benchmark
+	public int emulatedSecond() {
+		playNotes();
+		for (int frame = 0; frame < FRAMES_PER_SECOND; frame++) {
+			clock += FRAME_DOTS;
+			apu.catchUp(clock);
+			apu.audioPlayFrame();
+		}
+		return apu.reg4015Read();
+	}
+
+	// reinicia as notas a cada segundo (o sweep e os contadores de duracao acabariam silenciando os canais)
+	private void playNotes() {
+		mapper.ioWrite(0x4015, channelMask);
+
+		mapper.ioWrite(0x4000, 0xBF);	// quadrado 1: duty 50%, volume constante 15
+		mapper.ioWrite(0x4001, 0xFB);	// sweep ativo, periodo 7, negativo, deslocamento 3
+		mapper.ioWrite(0x4002, 0xFD);
+		mapper.ioWrite(0x4003, 0x09);
+		mapper.ioWrite(0x4004, 0x7F);	// quadrado 2: duty 25%, volume constante 15
+		mapper.ioWrite(0x4005, 0xA2);	// sweep ativo, periodo 2, positivo, deslocamento 2
+		mapper.ioWrite(0x4006, 0x40);
+		mapper.ioWrite(0x4007, 0x08);
+
+		mapper.ioWrite(0x4008, 0x81);	// triangulo: contador linear
+		mapper.ioWrite(0x400A, 0x42);
+		mapper.ioWrite(0x400B, 0x00);
+
+		mapper.ioWrite(0x400C, 0x3F);	// ruido: volume constante 15
+		mapper.ioWrite(0x400E, 0x05);
+		mapper.ioWrite(0x400F, 0x08);
+
+		mapper.ioWrite(0x4010, 0x4F);	// DMC: laco, taxa maxima, amostra em $C100 com 4081 bytes
+		mapper.ioWrite(0x4012, 0x04);
+		mapper.ioWrite(0x4013, 0xFF);
+	}
+}
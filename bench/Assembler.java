@@ -0,0 +1,104 @@
+/**
+ * Assembler.java
+ * Montador 6502 minimo para gerar o programa das ROMs sinteticas dos benchmarks
+ * os opcodes sao informados diretamente (comentario com o mnemonico ao lado de cada chamada);
+ * rotulos podem ser usados antes de definidos e sao resolvidos em assemble()
+ */
+
+package com.jamicom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class Assembler {
+
+	private byte[] memory;
+	private int origin;
+	private int pc;
+	private Map<String, Integer> labels;
+	private List<Fixup> fixups;
+
+	// referencia a um rotulo ainda nao resolvida: endereco absoluto (2 bytes) ou desvio relativo (1 byte)
+	private static class Fixup {
+		final int addr;
+		final String label;
+		final boolean relative;
+
+		Fixup(int addr, String label, boolean relative) {
+			this.addr = addr;
+			this.label = label;
+			this.relative = relative;
+		}
+	}
+
+	// origin: endereco da CPU do primeiro byte; size: tamanho da imagem (o fim contem os vetores)
+	Assembler(int origin, int size) {
+		this.origin = origin;
+		memory = new byte[size];
+		pc = origin;
+		labels = new HashMap<String, Integer>();
+		fixups = new ArrayList<Fixup>();
+	}
+
+	void label(String name) {
+		labels.put(name, pc);
+	}
+
+	void data(int... values) {
+		for (int value : values)
+			memory[(pc++) - origin] = (byte) value;
+	}
+
+	void implied(int opcode) {
+		data(opcode);
+	}
+
+	void immediate(int opcode, int value) {
+		data(opcode, value);
+	}
+
+	void zeroPage(int opcode, int addr) {
+		data(opcode, addr);
+	}
+
+	void absolute(int opcode, int addr) {
+		data(opcode, addr & 0xFF, addr >> 8);
+	}
+
+	void absolute(int opcode, String label) {
+		fixups.add(new Fixup(pc + 1, label, false));
+		data(opcode, 0, 0);
+	}
+
+	void branch(int opcode, String label) {
+		fixups.add(new Fixup(pc + 1, label, true));
+		data(opcode, 0);
+	}
+
+	// grava o endereco de um rotulo em addr (vetores de interrupcao)
+	void word(int addr, String label) {
+		fixups.add(new Fixup(addr, label, false));
+	}
+
+	byte[] assemble() {
+		for (Fixup fixup : fixups) {
+			Integer target = labels.get(fixup.label);
+			if (target == null)
+				throw new IllegalStateException("rotulo indefinido: " + fixup.label);
+			int offset = fixup.addr - origin;
+			if (fixup.relative) {
+				int displacement = target - (fixup.addr + 1);
+				if (displacement < -128 || displacement > 127)
+					throw new IllegalStateException("desvio fora de alcance: " + fixup.label);
+				memory[offset] = (byte) displacement;
+			}
+			else {
+				memory[offset] = (byte) target.intValue();
+				memory[offset + 1] = (byte) (target >> 8);
+			}
+		}
+		return memory;
+	}
+}
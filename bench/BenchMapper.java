@@ -0,0 +1,36 @@
+/**
+ * BenchMapper.java
+ * Mapper minimo para os benchmarks: nao depende de cartucho, console, PPU nem APU
+ * $0000-$7FFF = 32 KB de RAM (leitura e escrita), $8000-$FFFF = 32 KB de programa sintetico (somente leitura)
+ * registradores de hardware nao existem: leituras retornam 0 e escritas sao ignoradas
+ */
+
+package com.jamicom;
+
+class BenchMapper extends Mapper {
+
+	private int[] ram;
+	private int[] prg;
+
+	// prg: imagem de 32 KB que sera vista em $8000-$FFFF (vetores em $FFFA-$FFFF)
+	BenchMapper(int[] prg) {
+		this.prg = prg;
+		ram = new int[Globals.BANK_32K];
+		mapReadPages(0x0000, Globals.BANK_32K, ram, 0);
+		mapWritePages(0x0000, Globals.BANK_32K, ram, 0);
+		mapPrgRomPages(0x8000, Globals.BANK_32K, prg, 0);
+	}
+
+	int[] getRam() {
+		return ram;
+	}
+
+	@Override
+	int registerRead(int addr) {
+		return 0;
+	}
+
+	@Override
+	void registerWrite(int addr, int value) {
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * CpuBenchmark.java
+ * Benchmark JMH do interpretador 6502 (Cpu.executeInstruction) isolado do restante do sistema
+ * cada mistura e um laco curto em $8000 terminado por JMP $8000, executado sobre o BenchMapper (RAM + PRG sintetico)
+ * o resultado (ops/s) e em instrucoes por segundo; a taxa de alocacao sai do profiler gc (-prof gc)
+ * stepCycles e run executam o mesmo orcamento de ciclos, instrucao a instrucao (laco antigo do Console)
+ * e pelo laco interno de Cpu.run; nesses dois o resultado e em ciclos da CPU por segundo
+ * runRecompiled e o run com o recompilador de blocos quentes (Recompiler) ligado, numa CPU separada
+ * para comparar duas versoes, executar as arvores alternadas (antes, depois, antes, depois) com -f 3:
+ * a vazao da mesma arvore em maquinas compartilhadas varia ate 2x entre execucoes separadas no tempo
+ *
+ * misturas:
+ * ALU        - aritmetica e logica em imediato e transferencias entre registradores
+ * BRANCH     - laco DEX/BNE e desvios tomados e nao tomados
+ * RMW        - leitura-modificacao-escrita em pagina zero e absoluto indexado
+ * ZERO_PAGE  - cargas, armazenamentos e ALU em pagina zero e pagina zero indexada
+ * INDIRECT   - modos (zp,X) e (zp),Y, incluindo cruzamento de pagina
+ */
+
+package com.jamicom;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuBenchmark {
+
+	static final int INSTRUCTIONS = 10000;
+	static final int CYCLES = 30000;
+
+	private static final int[] ALU = {
+		0xA9, 0x37,			// LDA #$37
+		0x69, 0x11,			// ADC #$11
+		0xE9, 0x05,			// SBC #$05
+		0x29, 0xF0,			// AND #$F0
+		0x09, 0x0F,			// ORA #$0F
+		0x49, 0xAA,			// EOR #$AA
+		0xC9, 0x40,			// CMP #$40
+		0x0A,				// ASL A
+		0x6A,				// ROR A
+		0xAA,				// TAX
+		0xE8,				// INX
+		0x8A,				// TXA
+		0xA8,				// TAY
+		0x88,				// DEY
+		0x98,				// TYA
+		0x18,				// CLC
+		0x38,				// SEC
+		0x4C, 0x00, 0x80	// JMP $8000
+	};
+
+	private static final int[] BRANCH = {
+		0xA2, 0x10,			// LDX #$10
+		0xCA,				// DEX
+		0xD0, 0xFD,			// BNE -3
+		0x18,				// CLC
+		0x90, 0x00,			// BCC +0 (tomado)
+		0xB0, 0x00,			// BCS +0 (nao tomado)
+		0xA9, 0x00,			// LDA #$00
+		0xF0, 0x00,			// BEQ +0 (tomado)
+		0x30, 0x00,			// BMI +0 (nao tomado)
+		0x10, 0x00,			// BPL +0 (tomado)
+		0x4C, 0x00, 0x80	// JMP $8000
+	};
+
+	private static final int[] RMW = {
+		0xA2, 0x05,			// LDX #$05
+		0xE6, 0x10,			// INC $10
+		0xC6, 0x11,			// DEC $11
+		0x06, 0x12,			// ASL $12
+		0x46, 0x13,			// LSR $13
+		0x26, 0x14,			// ROL $14
+		0x66, 0x15,			// ROR $15
+		0xFE, 0x00, 0x02,	// INC $0200,X
+		0xDE, 0x00, 0x03,	// DEC $0300,X
+		0x1E, 0x00, 0x04,	// ASL $0400,X
+		0xEE, 0x00, 0x05,	// INC $0500
+		0x4C, 0x00, 0x80	// JMP $8000
+	};
+
+	private static final int[] ZERO_PAGE = {
+		0xA5, 0x10,			// LDA $10
+		0x85, 0x20,			// STA $20
+		0xA6, 0x30,			// LDX $30
+		0x86, 0x40,			// STX $40
+		0xB4, 0x50,			// LDY $50,X
+		0x94, 0x60,			// STY $60,X
+		0x65, 0x70,			// ADC $70
+		0xE5, 0x71,			// SBC $71
+		0x25, 0x72,			// AND $72
+		0x05, 0x73,			// ORA $73
+		0x45, 0x74,			// EOR $74
+		0xC5, 0x75,			// CMP $75
+		0x24, 0x76,			// BIT $76
+		0xB5, 0x77,			// LDA $77,X
+		0x95, 0x78,			// STA $78,X
+		0x4C, 0x00, 0x80	// JMP $8000
+	};
+
+	private static final int[] INDIRECT = {
+		0xA2, 0x00,			// LDX #$00
+		0xA0, 0x04,			// LDY #$04
+		0xA1, 0x20,			// LDA ($20,X)
+		0x81, 0x22,			// STA ($22,X)
+		0xB1, 0x24,			// LDA ($24),Y
+		0x91, 0x26,			// STA ($26),Y (cruza pagina)
+		0x61, 0x20,			// ADC ($20,X)
+		0xF1, 0x24,			// SBC ($24),Y
+		0x11, 0x26,			// ORA ($26),Y (cruza pagina)
+		0x4C, 0x00, 0x80	// JMP $8000
+	};
+
+	// ponteiros em pagina zero usados pela mistura INDIRECT: $20->$0300, $22->$0400, $24->$0500, $26->$06FE
+	private static final int[] POINTERS = { 0x00, 0x03, 0x00, 0x04, 0x00, 0x05, 0xFE, 0x06 };
+
+	@Param({"ALU", "BRANCH", "RMW", "ZERO_PAGE", "INDIRECT"})
+	public String mix;
+
+	private Cpu cpu;
+	private Cpu recompiledCpu;
+
+	@Setup
+	public void setup() {
+		BenchMapper mapper = new BenchMapper(buildPrg(program(mix)));
+		System.arraycopy(POINTERS, 0, mapper.getRam(), 0x20, POINTERS.length);
+		cpu = new Cpu();
+		cpu.setup(mapper);
+		cpu.reset(mapper.getRstAddr());
+
+		BenchMapper recompiledMapper = new BenchMapper(buildPrg(program(mix)));
+		System.arraycopy(POINTERS, 0, recompiledMapper.getRam(), 0x20, POINTERS.length);
+		recompiledCpu = new Cpu();
+		recompiledCpu.setRecompilerEnabled(true);
+		recompiledCpu.setup(recompiledMapper);
+		recompiledCpu.reset(recompiledMapper.getRstAddr());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(INSTRUCTIONS)
+	public int executeInstruction() {
+		int cycles = 0;
+		for (int n = 0; n < INSTRUCTIONS; n++)
+			cycles += cpu.executeInstruction();
+		return cycles;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CYCLES)
+	public int stepCycles() {
+		int cycles = 0;
+		while (cycles < CYCLES)
+			cycles += cpu.executeInstruction();
+		return cycles;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CYCLES)
+	public int run() {
+		return cpu.run(CYCLES);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CYCLES)
+	public int runRecompiled() {
+		return recompiledCpu.run(CYCLES);
+	}
+
+	static int[] program(String mix) {
+		switch (mix) {
+			case "ALU":
+				return ALU;
+			case "BRANCH":
+				return BRANCH;
+			case "RMW":
+				return RMW;
+			case "ZERO_PAGE":
+				return ZERO_PAGE;
+			case "INDIRECT":
+				return INDIRECT;
+			default:
+				throw new IllegalArgumentException("mistura desconhecida: " + mix);
+		}
+	}
+
+	// imagem de 32 KB com o programa em $8000 e todos os vetores apontando para $8000
+	static int[] buildPrg(int[] code) {
+		int[] prg = new int[Globals.BANK_32K];
+		System.arraycopy(code, 0, prg, 0, code.length);
+		for (int addr = 0x7FFA; addr < 0x8000; addr += 2) {
+			prg[addr] = 0x00;
+			prg[addr + 1] = 0x80;
+		}
+		return prg;
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * DifferentialGate.java
+ * Verificacao de regressao: os caminhos rapidos da emulacao devem produzir o mesmo resultado das versoes de referencia
+ * executa as ROMs sinteticas (RomImage.demoRom e RomImage.interruptRom) em cada modo (run, recompilador,
+ * APU ciclo a ciclo, modo mudo) e compara, quadro a quadro, o hash da tela, da RAM interna e do audio com o da
+ * referencia: interpretador puro (todas as instrucoes pelos tratadores) e APU por eventos; no modo mudo, ligado e
+ * desligado a cada MUTE_FRAMES quadros, o audio nao e comparado (so o estado visivel a CPU precisa ser o mesmo);
+ * termina com codigo de saida 1 na primeira diferenca
+ *
+ * uso: java com.jamicom.DifferentialGate [-frames N]
+ */
+
+package com.jamicom;
+
+import java.io.IOException;
+
+public class DifferentialGate {
+
+	static final int MODE_INTERPRETER = 0;	// referencia: Cpu.setInterpreterOnly
+	static final int MODE_RUN = 1;			// caminho rapido de Cpu.run
+	static final int MODE_RECOMPILER = 2;	// blocos quentes recompilados (Emulator.setRecompilerEnabled)
+	static final int MODE_APU_STEP = 3;		// APU sem os saltos entre eventos (Apu.setStepEveryCycle)
+	static final int MODE_MUTED = 4;		// Emulator.setAudioMuted alternado durante a execucao
+	static final String[] MODE_NAMES = { "interpretador", "run", "recompilador", "APU ciclo a ciclo", "modo mudo" };
+
+	static final String[] PART_NAMES = { "tela", "RAM", "audio" };
+	static final int MUTE_FRAMES = 50;
+
+	// partes comparadas em cada modo (bit n = PART_NAMES[n])
+	static final int[] MODE_PARTS = { 7, 7, 7, 7, 3 };
+
+	public static void main(String[] args) throws IOException {
+		int frames = 300;
+
+		for (int n = 0; n < args.length; n++) {
+			if (args[n].equals("-frames"))
+				frames = Integer.parseInt(args[++n]);
+			else {
+				System.out.println("uso: DifferentialGate [-frames N]");
+				System.exit(2);
+			}
+		}
+
+		String[] romNames = { "demoRom", "interruptRom" };
+		byte[][] roms = { RomImage.demoRom(), RomImage.interruptRom() };
+
+		boolean failed = false;
+		for (int r = 0; r < roms.length; r++) {
+			long[] reference = frameHashes(roms[r], MODE_INTERPRETER, frames);
+			for (int mode = MODE_INTERPRETER + 1; mode < MODE_NAMES.length; mode++) {
+				long[] hashes = frameHashes(roms[r], mode, frames);
+				int diff = firstDifference(reference, hashes, MODE_PARTS[mode]);
+				if (diff < 0) {
+					System.out.printf("%s, %s: %d quadros iguais a referencia%n", romNames[r], MODE_NAMES[mode], frames);
+				} else {
+					System.out.printf("%s, %s: %s diferente da referencia no quadro %d%n",
+							romNames[r], MODE_NAMES[mode], PART_NAMES[diff % PART_NAMES.length], diff / PART_NAMES.length);
+					failed = true;
+				}
+			}
+		}
+		if (failed) {
+			System.out.println("FALHOU: um caminho rapido diverge da referencia");
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+
+	// hashes da tela, da RAM e do audio de cada quadro (PART_NAMES.length valores por quadro)
+	static long[] frameHashes(byte[] image, int mode, int frames) throws IOException {
+		final long[] output = new long[2];		// tela e audio do quadro atual
+		VideoSink video = new VideoSink() {
+			public void frameReady(int[] screenBuffer) {
+				long hash = 0;
+				for (int n = 0; n < screenBuffer.length; n++)
+					hash = hash * 31 + screenBuffer[n];
+				output[0] = hash;
+			}
+		};
+		AudioSink audio = new AudioSink() {
+			public void writeFrame(byte[] samples, int length) {
+				long hash = length;
+				for (int n = 0; n < length; n++)
+					hash = hash * 31 + samples[n];
+				output[1] = hash;
+			}
+		};
+		InputSource input = new InputSource() {
+			public int getButtons(long frame) {
+				return 0;
+			}
+		};
+
+		Emulator emulator = new Emulator(video, audio, input);
+		emulator.loadCartridge(RomImage.cartridge(image));
+		if (mode == MODE_INTERPRETER)
+			emulator.getCpu().setInterpreterOnly(true);
+		else if (mode == MODE_RECOMPILER)
+			emulator.setRecompilerEnabled(true);
+		else if (mode == MODE_APU_STEP)
+			emulator.getApu().setStepEveryCycle(true);
+
+		Mapper mapper = emulator.getMapper();
+		long[] hashes = new long[frames * PART_NAMES.length];
+		for (int frame = 0; frame < frames; frame++) {
+			if (mode == MODE_MUTED)
+				emulator.setAudioMuted((frame / MUTE_FRAMES & 1) != 0);
+			emulator.runFrame();
+			long ram = 0;
+			for (int addr = 0; addr < 0x800; addr++)
+				ram = ram * 31 + mapper.ioRead(addr);
+			hashes[frame * PART_NAMES.length] = output[0];
+			hashes[frame * PART_NAMES.length + 1] = ram;
+			hashes[frame * PART_NAMES.length + 2] = output[1];
+		}
+		return hashes;
+	}
+
+	// indice do primeiro hash diferente entre as partes comparadas, ou -1
+	static int firstDifference(long[] reference, long[] hashes, int parts) {
+		for (int n = 0; n < reference.length; n++)
+			if ((parts & 1 << n % PART_NAMES.length) != 0 && reference[n] != hashes[n])
+				return n;
+		return -1;
+	}
+}
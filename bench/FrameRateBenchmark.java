@@ -0,0 +1,86 @@
+/**
+ * FrameRateBenchmark.java
+ * Medicao de ponta a ponta do sistema completo (CPU, PPU, APU, mapper) sem limite de velocidade
+ * a ROM e sintetica (RomImage.demoRom), gerada em memoria e carregada pelo Cartridge, logo o numero
+ * e reproduzivel em qualquer maquina sem depender de ROMs comerciais
+ * informa quadros por segundo, tempo por quadro (mediana e percentil 99) e bytes alocados por quadro
+ *
+ * uso: java com.jamicom.FrameRateBenchmark [-frames N] [-warmup N] [-rom arquivo.nes] [-audiothread] [-jit]
+ * -audiothread mede com a sintese do audio na thread da ApuWorker (o tempo medido e o da thread da emulacao)
+ * -jit mede com o recompilador de blocos quentes da CPU (Recompiler) ligado
+ */
+
+package com.jamicom;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+public class FrameRateBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int frames = 3000;
+		int warmup = 600;
+		String romPath = null;
+		boolean audioThread = false;
+		boolean recompiler = false;
+
+		for (int n = 0; n < args.length; n++) {
+			if (args[n].equals("-frames"))
+				frames = Integer.parseInt(args[++n]);
+			else if (args[n].equals("-warmup"))
+				warmup = Integer.parseInt(args[++n]);
+			else if (args[n].equals("-rom"))
+				romPath = args[++n];
+			else if (args[n].equals("-audiothread"))
+				audioThread = true;
+			else if (args[n].equals("-jit"))
+				recompiler = true;
+			else {
+				System.out.println("uso: FrameRateBenchmark [-frames N] [-warmup N] [-rom arquivo.nes] [-audiothread] [-jit]");
+				return;
+			}
+		}
+
+		Cartridge cartridge = romPath != null ? new Cartridge(new File(romPath))
+				: RomImage.cartridge(RomImage.demoRom());
+		Emulator emulator = new Emulator();
+		if (audioThread)
+			emulator.startAudioThread();
+		emulator.setRecompilerEnabled(recompiler);
+		emulator.loadCartridge(cartridge);
+
+		// aquecimento: deixa o JIT compilar o laco de quadros antes da medicao
+		emulator.runFrames(warmup);
+
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long[] frameTimes = new long[frames];
+
+		long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int n = 0; n < frames; n++) {
+			long frameStart = System.nanoTime();
+			emulator.runFrame();
+			frameTimes[n] = System.nanoTime() - frameStart;
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+		Arrays.sort(frameTimes);
+		System.out.printf("rom: %s%s%n", romPath != null ? romPath : "sintetica (RomImage.demoRom)",
+				recompiler ? ", recompilador ligado" : "");
+		System.out.printf("%d quadros em %.2f s: %.1f fps%n", frames, elapsed / 1e9, frames * 1e9 / elapsed);
+		System.out.printf("tempo por quadro: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+				percentile(frameTimes, 50) / 1e6, percentile(frameTimes, 99) / 1e6, frameTimes[frames - 1] / 1e6);
+		System.out.printf("alocacao: %.1f bytes/quadro (%d bytes no total)%n", (double) allocated / frames, allocated);
+	}
+
+	// percentil pelo metodo do posto mais proximo sobre o array ja ordenado
+	static long percentile(long[] sorted, int percent) {
+		int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * MethodSizeGate.java
+ * Verificacao de regressao: os metodos do nucleo devem caber nos limites de compilacao do HotSpot
+ * le o tamanho do bytecode de cada metodo direto do arquivo .class e falha (codigo de saida 1) se:
+ * - algum metodo passar de HugeMethodLimit (8000 bytes): o JIT nao compila e ele fica interpretado
+ * - algum tratador passar de FreqInlineSize (325 bytes): o C2 nao consegue inlinar no despachante
+ * os despachantes (switch dos opcodes em executeInstruction e no laco de run) e os construtores so precisam
+ * respeitar o primeiro limite
+ *
+ * uso: java com.jamicom.MethodSizeGate [-class nome] [-dispatch metodo,...] [-inline bytes] [-huge bytes]
+ */
+
+package com.jamicom;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class MethodSizeGate {
+
+	static final int HUGE_METHOD_LIMIT = 8000;
+	static final int FREQ_INLINE_SIZE = 325;
+
+	// nome e tamanho do bytecode de um metodo
+	static class MethodSize {
+		final String name;
+		final int codeLength;
+
+		MethodSize(String name, int codeLength) {
+			this.name = name;
+			this.codeLength = codeLength;
+		}
+	}
+
+	public static void main(String[] args) throws IOException, ClassNotFoundException {
+		String className = "com.jamicom.Cpu";
+		List<String> dispatchers = new ArrayList<String>(Arrays.asList("executeInstruction", "run"));
+		int inlineLimit = FREQ_INLINE_SIZE;
+		int hugeLimit = HUGE_METHOD_LIMIT;
+
+		for (int n = 0; n < args.length; n++) {
+			if (args[n].equals("-class"))
+				className = args[++n];
+			else if (args[n].equals("-dispatch"))
+				dispatchers = Arrays.asList(args[++n].split(","));
+			else if (args[n].equals("-inline"))
+				inlineLimit = Integer.parseInt(args[++n]);
+			else if (args[n].equals("-huge"))
+				hugeLimit = Integer.parseInt(args[++n]);
+			else {
+				System.out.println("uso: MethodSizeGate [-class nome] [-dispatch metodo,...] [-inline bytes] [-huge bytes]");
+				System.exit(2);
+			}
+		}
+
+		Class<?> target = Class.forName(className);
+		List<MethodSize> methods;
+		InputStream input = target.getResourceAsStream(target.getSimpleName() + ".class");
+		try {
+			methods = readMethodSizes(new DataInputStream(input));
+		}
+		finally {
+			input.close();
+		}
+
+		Collections.sort(methods, new Comparator<MethodSize>() {
+			public int compare(MethodSize a, MethodSize b) {
+				return b.codeLength - a.codeLength;
+			}
+		});
+
+		int failures = 0;
+		for (MethodSize method : methods) {
+			boolean exempt = dispatchers.contains(method.name) || method.name.startsWith("<");
+			int limit = exempt ? hugeLimit - 1 : inlineLimit;
+			if (method.codeLength > limit) {
+				System.out.printf("FALHOU: %s.%s tem %d bytes de bytecode (limite %d)%n",
+						target.getSimpleName(), method.name, method.codeLength, limit);
+				failures++;
+			}
+		}
+		System.out.printf("%s: %d metodos; maiores:", target.getSimpleName(), methods.size());
+		for (int n = 0; n < Math.min(5, methods.size()); n++)
+			System.out.printf(" %s=%d", methods.get(n).name, methods.get(n).codeLength);
+		System.out.println();
+		if (failures > 0)
+			System.exit(1);
+		System.out.println("OK");
+	}
+
+	// percorre o arquivo .class (JVMS cap. 4) ate os atributos Code dos metodos
+	static List<MethodSize> readMethodSizes(DataInputStream in) throws IOException {
+		if (in.readInt() != 0xCAFEBABE)
+			throw new IOException("arquivo .class invalido");
+		in.readUnsignedShort();		// versao
+		in.readUnsignedShort();
+
+		int poolCount = in.readUnsignedShort();
+		String[] utf8 = new String[poolCount];
+		for (int n = 1; n < poolCount; n++) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+				case 1:		// Utf8
+					utf8[n] = in.readUTF();
+					break;
+				case 3: case 4:		// Integer, Float
+				case 9: case 10: case 11: case 12:		// referencias, NameAndType
+				case 17: case 18:	// Dynamic, InvokeDynamic
+					in.readInt();
+					break;
+				case 5: case 6:		// Long, Double ocupam duas posicoes
+					in.readLong();
+					n++;
+					break;
+				case 7: case 8: case 16: case 19: case 20:		// Class, String, MethodType, Module, Package
+					in.readUnsignedShort();
+					break;
+				case 15:	// MethodHandle
+					in.readUnsignedByte();
+					in.readUnsignedShort();
+					break;
+				default:
+					throw new IOException("constante desconhecida no .class: " + tag);
+			}
+		}
+
+		in.readUnsignedShort();		// acesso, classe, superclasse
+		in.readUnsignedShort();
+		in.readUnsignedShort();
+		in.skipBytes(in.readUnsignedShort() * 2);	// interfaces
+
+		int fieldCount = in.readUnsignedShort();
+		for (int n = 0; n < fieldCount; n++) {
+			in.skipBytes(6);
+			skipAttributes(in);
+		}
+
+		List<MethodSize> methods = new ArrayList<MethodSize>();
+		int methodCount = in.readUnsignedShort();
+		for (int n = 0; n < methodCount; n++) {
+			in.readUnsignedShort();
+			String name = utf8[in.readUnsignedShort()];
+			in.readUnsignedShort();
+			int attributes = in.readUnsignedShort();
+			for (int a = 0; a < attributes; a++) {
+				String attribute = utf8[in.readUnsignedShort()];
+				int length = in.readInt();
+				if (attribute.equals("Code")) {
+					in.readUnsignedShort();		// max_stack, max_locals
+					in.readUnsignedShort();
+					int codeLength = in.readInt();
+					methods.add(new MethodSize(name, codeLength));
+					in.skipBytes(length - 8);
+				}
+				else
+					in.skipBytes(length);
+			}
+		}
+		return methods;
+	}
+
+	private static void skipAttributes(DataInputStream in) throws IOException {
+		int attributes = in.readUnsignedShort();
+		for (int a = 0; a < attributes; a++) {
+			in.readUnsignedShort();
+			in.skipBytes(in.readInt());
+		}
+	}
+}
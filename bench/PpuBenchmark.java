@@ -0,0 +1,139 @@
+/**
+ * PpuBenchmark.java
+ * Benchmark JMH da renderizacao da PPU (updateBgLine, renderScanline e renderSprites) isolada da CPU e da APU
+ * cada invocacao renderiza um quadro completo (262 linhas, das quais 240 visiveis) atraves de Ppu.catchUp,
+ * linha a linha, sobre um cartucho sintetico com nametables, atributos e CHR preenchidos
+ * frame = ns por quadro; scanline = o mesmo trabalho dividido pelas 262 linhas do quadro
+ *
+ * cenarios:
+ * BG_ONLY       - somente cenario
+ * SPRITES_64    - cenario e 64 sprites 8x8 espalhados pelas linhas
+ * SPRITES_8X16  - cenario e 64 sprites 8x16
+ * SCROLL_SPLIT  - cenario e sprites, com troca do scroll horizontal a cada 30 linhas (como escritas em $2005)
+ * DISABLED      - renderizacao desligada ($2001 = 0)
+ */
+
+package com.jamicom;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PpuBenchmark {
+
+	static final int SPLIT_LINES = 30;
+	static final int SPRITES = 64;
+
+	@Param({"BG_ONLY", "SPRITES_64", "SPRITES_8X16", "SCROLL_SPLIT", "DISABLED"})
+	public String scenario;
+
+	private Ppu ppu;
+	private Screen screen;
+	private long clock;
+	private boolean scrollSplit;
+
+	@Setup
+	public void setup() throws IOException {
+		Emulator emulator = new Emulator();
+		emulator.loadCartridge(RomImage.cartridge(
+				RomImage.build(RomImage.idlePrg(), RomImage.patternChr(), 0, 1)));
+		ppu = emulator.getPpu();
+		screen = emulator.getScreen();
+		clock = 0;
+
+		// nametables e tabelas de atributos com tiles e subpaletas variados
+		Mapper mapper = emulator.getMapper();
+		for (int addr = 0x2000; addr < 0x3000; addr++)
+			mapper.vramWrite(addr, (addr * 7 + (addr >> 5)) & 0xFF);
+		for (int n = 0; n < ppu.getPalette().length; n++)
+			ppu.palettesWrite(n, (n * 7 + 0x11) & 0x3F);
+
+		switch (scenario) {
+			case "BG_ONLY":
+				ppu.reg2000Write(0x00);
+				ppu.reg2001Write(0x0A);
+				break;
+			case "SPRITES_64":
+				ppu.reg2000Write(0x08);
+				ppu.reg2001Write(0x1E);
+				fillOam();
+				break;
+			case "SPRITES_8X16":
+				ppu.reg2000Write(0x20);
+				ppu.reg2001Write(0x1E);
+				fillOam();
+				break;
+			case "SCROLL_SPLIT":
+				ppu.reg2000Write(0x08);
+				ppu.reg2001Write(0x1E);
+				fillOam();
+				scrollSplit = true;
+				break;
+			case "DISABLED":
+				ppu.reg2000Write(0x00);
+				ppu.reg2001Write(0x00);
+				break;
+			default:
+				throw new IllegalArgumentException("cenario desconhecido: " + scenario);
+		}
+	}
+
+	// 64 sprites com posicoes, tiles e atributos (paleta, prioridade, flip) variados
+	private void fillOam() {
+		for (int n = 0; n < SPRITES; n++) {
+			int entry = n * Globals.SPRITE_ENTRY_SIZE;
+			ppu.sprOamWrite(entry, (n * 53) % 224 + 7);
+			ppu.sprOamWrite(entry + 1, (n * 3) & 0xFF);
+			ppu.sprOamWrite(entry + 2, n & 0xE3);
+			ppu.sprOamWrite(entry + 3, (n * 37) & 0xFF);
+		}
+	}
+
+	@Benchmark
+	public int frame() {
+		renderFrame();
+		return ppu.getFlagsRegister();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Globals.SCANLINES_PER_FRAME)
+	public int scanline() {
+		renderFrame();
+		return ppu.getFlagsRegister();
+	}
+
+	private void renderFrame() {
+		for (int line = 0; line < Globals.SCANLINES_PER_FRAME; line++) {
+			if (scrollSplit && line < 240 && line % SPLIT_LINES == 0)
+				setScrollX(line * 5);
+			clock += Globals.DOTS_PER_SCANLINE;
+			ppu.catchUp(clock);
+		}
+		// como em Emulator.runFrame, a tela volta ao inicio a cada quadro
+		screen.resetDrawBuffer();
+	}
+
+	// equivalente a primeira escrita em $2005: copiada para loopyV no ponto 257 da linha
+	private void setScrollX(int x) {
+		ppu.setLoopyT((ppu.getLoopyT() & ~0x1F) | ((x >> 3) & 0x1F));
+		ppu.setFineX(x & 7);
+	}
+}
@@ -0,0 +1,293 @@
+/**
+ * RomImage.java
+ * Monta imagens iNES sinteticas em memoria para os benchmarks (nenhuma ROM comercial e necessaria)
+ * a imagem gerada e carregada pelo mesmo caminho de um arquivo .nes (Cartridge)
+ */
+
+package com.jamicom;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+class RomImage {
+
+	static final int HEADER_SIZE = 16;
+
+	// prg: multiplo de 16 KB; chr: multiplo de 8 KB ou vazio (CHR-RAM); mirror: 0 = horizontal, 1 = vertical
+	static byte[] build(byte[] prg, byte[] chr, int mapperNum, int mirror) {
+		byte[] image = new byte[HEADER_SIZE + prg.length + chr.length];
+		image[0] = 'N';
+		image[1] = 'E';
+		image[2] = 'S';
+		image[3] = 0x1A;
+		image[4] = (byte) (prg.length / Globals.BANK_16K);
+		image[5] = (byte) (chr.length / Globals.BANK_8K);
+		image[6] = (byte) (((mapperNum & 0x0F) << 4) | (mirror & 1));
+		image[7] = (byte) (mapperNum & 0xF0);
+		System.arraycopy(prg, 0, image, HEADER_SIZE, prg.length);
+		System.arraycopy(chr, 0, image, HEADER_SIZE + prg.length, chr.length);
+		return image;
+	}
+
+	static Cartridge cartridge(byte[] image) throws IOException {
+		return new Cartridge(new ByteArrayInputStream(image));
+	}
+
+	// PRG de 16 KB contendo apenas um laco infinito (JMP $C000), com todos os vetores apontando para ele
+	static byte[] idlePrg() {
+		byte[] prg = new byte[Globals.BANK_16K];
+		prg[0] = 0x4C;
+		prg[1] = 0x00;
+		prg[2] = (byte) 0xC0;
+		for (int addr = 0x3FFA; addr < 0x4000; addr += 2) {
+			prg[addr] = 0x00;
+			prg[addr + 1] = (byte) 0xC0;
+		}
+		return prg;
+	}
+
+	/* ROM completa que exercita o sistema como um jogo simples (mapper 0, 16 KB de PRG, 8 KB de CHR):
+	 * inicializa paletas, nametables e 64 sprites, liga cenario, sprites, NMI e os cinco canais da APU;
+	 * a cada quadro espera o NMI, move os sprites e troca a nota do quadrado 1 a cada 16 quadros;
+	 * o NMI faz o DMA de sprites e avanca o scroll horizontal
+	 */
+	static byte[] demoRom() {
+		Assembler a = new Assembler(0xC000, Globals.BANK_16K);
+
+		a.label("reset");
+		a.implied(0x78);				// SEI
+		a.implied(0xD8);				// CLD
+		a.immediate(0xA2, 0xFF);		// LDX #$FF
+		a.implied(0x9A);				// TXS
+		a.immediate(0xA9, 0x00);		// LDA #$00
+		a.absolute(0x8D, 0x2000);		// STA $2000
+		a.absolute(0x8D, 0x2001);		// STA $2001
+		a.label("vblank1");
+		a.absolute(0x2C, 0x2002);		// BIT $2002
+		a.branch(0x10, "vblank1");		// BPL vblank1
+		a.label("vblank2");
+		a.absolute(0x2C, 0x2002);		// BIT $2002
+		a.branch(0x10, "vblank2");		// BPL vblank2
+
+		// paletas ($3F00-$3F1F)
+		a.immediate(0xA9, 0x3F);		// LDA #$3F
+		a.absolute(0x8D, 0x2006);		// STA $2006
+		a.immediate(0xA9, 0x00);		// LDA #$00
+		a.absolute(0x8D, 0x2006);		// STA $2006
+		a.immediate(0xA2, 0x00);		// LDX #$00
+		a.label("palette");
+		a.absolute(0xBD, "paletteData");	// LDA paletteData,X
+		a.absolute(0x8D, 0x2007);		// STA $2007
+		a.implied(0xE8);				// INX
+		a.immediate(0xE0, 0x20);		// CPX #$20
+		a.branch(0xD0, "palette");		// BNE palette
+
+		// nametables e atributos ($2000-$27FF)
+		a.immediate(0xA9, 0x20);		// LDA #$20
+		a.absolute(0x8D, 0x2006);		// STA $2006
+		a.immediate(0xA9, 0x00);		// LDA #$00
+		a.absolute(0x8D, 0x2006);		// STA $2006
+		a.immediate(0xA0, 0x08);		// LDY #$08
+		a.immediate(0xA2, 0x00);		// LDX #$00
+		a.label("nametable");
+		a.implied(0x8A);				// TXA
+		a.implied(0x18);				// CLC
+		a.zeroPage(0x65, 0x01);			// ADC $01
+		a.absolute(0x8D, 0x2007);		// STA $2007
+		a.implied(0xE8);				// INX
+		a.branch(0xD0, "nametable");	// BNE nametable
+		a.zeroPage(0xE6, 0x01);			// INC $01
+		a.implied(0x88);				// DEY
+		a.branch(0xD0, "nametable");	// BNE nametable
+
+		// 64 sprites na pagina $0200 (copiada para a OAM pelo NMI)
+		a.immediate(0xA2, 0x00);		// LDX #$00
+		a.label("sprites");
+		a.implied(0x8A);				// TXA
+		a.absolute(0x9D, 0x0200);		// STA $0200,X
+		a.implied(0x4A);				// LSR A
+		a.implied(0x4A);				// LSR A
+		a.absolute(0x9D, 0x0201);		// STA $0201,X
+		a.immediate(0x29, 0x23);		// AND #$23
+		a.absolute(0x9D, 0x0202);		// STA $0202,X
+		a.implied(0x8A);				// TXA
+		a.implied(0x0A);				// ASL A
+		a.absolute(0x9D, 0x0203);		// STA $0203,X
+		a.implied(0xE8);				// INX
+		a.implied(0xE8);				// INX
+		a.implied(0xE8);				// INX
+		a.implied(0xE8);				// INX
+		a.branch(0xD0, "sprites");		// BNE sprites
+
+		// APU: os cinco canais ligados, frame counter sem IRQ
+		int[] apuRegisters = {
+			0x4015, 0x1F, 0x4017, 0x40,
+			0x4000, 0xBF, 0x4001, 0x00, 0x4002, 0xFD, 0x4003, 0x08,
+			0x4004, 0x7F, 0x4005, 0x00, 0x4006, 0x40, 0x4007, 0x09,
+			0x4008, 0x81, 0x400A, 0x42, 0x400B, 0x00,
+			0x400C, 0x3F, 0x400E, 0x05, 0x400F, 0x08,
+			0x4010, 0x4F, 0x4012, 0x00, 0x4013, 0x10
+		};
+		for (int n = 0; n < apuRegisters.length; n += 2) {
+			a.immediate(0xA9, apuRegisters[n + 1]);	// LDA #valor
+			a.absolute(0x8D, apuRegisters[n]);		// STA registrador
+		}
+
+		// liga NMI (sprites na tabela $1000) e a renderizacao
+		a.immediate(0xA9, 0x88);		// LDA #$88
+		a.absolute(0x8D, 0x2000);		// STA $2000
+		a.immediate(0xA9, 0x1E);		// LDA #$1E
+		a.absolute(0x8D, 0x2001);		// STA $2001
+
+		// laco principal: espera o NMI (contador de quadros em $00) e atualiza o jogo
+		a.label("main");
+		a.zeroPage(0xA5, 0x00);			// LDA $00
+		a.label("waitNmi");
+		a.zeroPage(0xC5, 0x00);			// CMP $00
+		a.branch(0xF0, "waitNmi");		// BEQ waitNmi
+		a.immediate(0xA2, 0x00);		// LDX #$00
+		a.label("move");
+		a.absolute(0xFE, 0x0203);		// INC $0203,X
+		a.absolute(0xFE, 0x0200);		// INC $0200,X
+		a.implied(0xE8);				// INX
+		a.implied(0xE8);				// INX
+		a.implied(0xE8);				// INX
+		a.implied(0xE8);				// INX
+		a.branch(0xD0, "move");			// BNE move
+		a.zeroPage(0xA5, 0x00);			// LDA $00
+		a.immediate(0x29, 0x0F);		// AND #$0F
+		a.branch(0xD0, "main");			// BNE main
+		a.zeroPage(0xA5, 0x00);			// LDA $00
+		a.absolute(0x8D, 0x4002);		// STA $4002
+		a.immediate(0xA9, 0x08);		// LDA #$08
+		a.absolute(0x8D, 0x4003);		// STA $4003
+		a.absolute(0x4C, "main");		// JMP main
+
+		// NMI: DMA de sprites, scroll horizontal e contador de quadros
+		a.label("nmi");
+		a.implied(0x48);				// PHA
+		a.immediate(0xA9, 0x00);		// LDA #$00
+		a.absolute(0x8D, 0x2003);		// STA $2003
+		a.immediate(0xA9, 0x02);		// LDA #$02
+		a.absolute(0x8D, 0x4014);		// STA $4014
+		a.absolute(0x2C, 0x2002);		// BIT $2002
+		a.zeroPage(0xA5, 0x00);			// LDA $00
+		a.absolute(0x8D, 0x2005);		// STA $2005
+		a.immediate(0xA9, 0x00);		// LDA #$00
+		a.absolute(0x8D, 0x2005);		// STA $2005
+		a.zeroPage(0xE6, 0x00);			// INC $00
+		a.implied(0x68);				// PLA
+		a.label("irq");
+		a.implied(0x40);				// RTI
+
+		a.label("paletteData");
+		for (int n = 0; n < 32; n++)
+			a.data((n * 7 + 0x11) & 0x3F);
+
+		a.word(0xFFFA, "nmi");
+		a.word(0xFFFC, "reset");
+		a.word(0xFFFE, "irq");
+		return build(a.assemble(), patternChr(), 0, 1);
+	}
+
+	/* ROM para a temporizacao das interrupcoes (mapper 0, 16 KB de PRG, CHR-RAM, sem renderizacao):
+	 * liga o NMI e o IRQ do frame counter da APU e fica num laco que so usa a CPU e a RAM;
+	 * os dois tratadores comecam com instrucoes de CPU e RAM e depois escrevem na saida da DMC ($4011),
+	 * assim um desvio de ciclos na entrada da interrupcao muda o instante das escritas e aparece no audio
+	 * o IRQ guarda o contador do laco principal em $15 (instante do IRQ) e o status da APU ($4015) em $14 e recarrega
+	 * os contadores de duracao dos quatro canais quando zeram, deixando na RAM o estado que o modo mudo deve manter exato
+	 */
+	static byte[] interruptRom() {
+		Assembler a = new Assembler(0xC000, Globals.BANK_16K);
+
+		a.label("reset");
+		a.implied(0x78);				// SEI
+		a.implied(0xD8);				// CLD
+		a.immediate(0xA2, 0xFF);		// LDX #$FF
+		a.implied(0x9A);				// TXS
+		a.immediate(0xA9, 0x00);		// LDA #$00
+		a.absolute(0x8D, 0x2000);		// STA $2000
+		a.absolute(0x8D, 0x2001);		// STA $2001
+		a.label("vblank1");
+		a.absolute(0x2C, 0x2002);		// BIT $2002
+		a.branch(0x10, "vblank1");		// BPL vblank1
+		a.label("vblank2");
+		a.absolute(0x2C, 0x2002);		// BIT $2002
+		a.branch(0x10, "vblank2");		// BPL vblank2
+
+		// quadrados, triangulo e ruido ligados (silenciosos, so os contadores de duracao)
+		a.immediate(0xA9, 0x0F);		// LDA #$0F
+		a.absolute(0x8D, 0x4015);		// STA $4015
+		a.absolute(0x20, "reload");		// JSR reload
+
+		// frame counter de 4 passos com IRQ, NMI ligado
+		a.immediate(0xA9, 0x00);		// LDA #$00
+		a.absolute(0x8D, 0x4017);		// STA $4017
+		a.immediate(0xA9, 0x80);		// LDA #$80
+		a.absolute(0x8D, 0x2000);		// STA $2000
+		a.implied(0x58);				// CLI
+
+		// laco principal: so CPU e RAM
+		a.label("main");
+		a.zeroPage(0xE6, 0x12);			// INC $12
+		a.zeroPage(0xA5, 0x12);			// LDA $12
+		a.immediate(0x69, 0x01);		// ADC #$01
+		a.zeroPage(0x85, 0x13);			// STA $13
+		a.absolute(0x4C, "main");		// JMP main
+
+		// NMI: inverte o nivel da DMC a cada quadro
+		a.label("nmi");
+		a.zeroPage(0xA5, 0x10);			// LDA $10
+		a.immediate(0x49, 0xFF);		// EOR #$FF
+		a.zeroPage(0x85, 0x10);			// STA $10
+		a.immediate(0x29, 0x7F);		// AND #$7F
+		a.absolute(0x8D, 0x4011);		// STA $4011
+		a.implied(0x40);				// RTI
+
+		// IRQ do frame counter: rampa no nivel da DMC e reconhecimento em $4015
+		a.label("irq");
+		a.zeroPage(0xA5, 0x11);			// LDA $11
+		a.implied(0x18);				// CLC
+		a.immediate(0x69, 0x05);		// ADC #$05
+		a.zeroPage(0x85, 0x11);			// STA $11
+		a.immediate(0x29, 0x7F);		// AND #$7F
+		a.absolute(0x8D, 0x4011);		// STA $4011
+		a.zeroPage(0xA5, 0x12);			// LDA $12
+		a.zeroPage(0x85, 0x15);			// STA $15
+		a.absolute(0xAD, 0x4015);		// LDA $4015
+		a.zeroPage(0x85, 0x14);			// STA $14
+		a.immediate(0x29, 0x0F);		// AND #$0F
+		a.branch(0xD0, "irqEnd");		// BNE irqEnd
+		a.absolute(0x20, "reload");		// JSR reload
+		a.label("irqEnd");
+		a.implied(0x40);				// RTI
+
+		// contadores de duracao com 10 meios quadros
+		a.label("reload");
+		a.immediate(0xA9, 0x00);		// LDA #$00
+		a.absolute(0x8D, 0x4003);		// STA $4003
+		a.absolute(0x8D, 0x4007);		// STA $4007
+		a.absolute(0x8D, 0x400B);		// STA $400B
+		a.absolute(0x8D, 0x400F);		// STA $400F
+		a.implied(0x60);				// RTS
+
+		a.word(0xFFFA, "nmi");
+		a.word(0xFFFC, "reset");
+		a.word(0xFFFE, "irq");
+		return build(a.assemble(), new byte[0], 0, 1);
+	}
+
+	// CHR de 8 KB com um padrao diferente em cada tile, usando os quatro indices de cor
+	static byte[] patternChr() {
+		byte[] chr = new byte[Globals.BANK_8K];
+		for (int n = 0; n < chr.length; n++) {
+			int tile = n >> 4;
+			int row = n & 7;
+			if ((n & 8) == 0)
+				chr[n] = (byte) ((tile * 37 + row * 11) ^ (row << 4));
+			else
+				chr[n] = (byte) ((tile * 13 + row * 71) ^ 0xA5);
+		}
+		return chr;
+	}
+}